@@ -21,9 +21,10 @@ public class Main {
 	public static void start(boolean usesAPI) {
 		FeesCalculator feesCalculator = new FeesCalculator();
 		DBHandler dbHandler = new DBHandler();
-		BankTransaction withdrawal = new BankWithdrawal(feesCalculator, dbHandler);
-		BankTransaction deposit = new BankDeposit(feesCalculator, dbHandler);
-		BankTransaction transfer = new BankTransfer(feesCalculator, dbHandler);
+		dbHandler.enableProfileCache(DBHandler.DEFAULT_PROFILE_CACHE_SIZE, DBHandler.DEFAULT_PROFILE_CACHE_TTL_MILLIS);
+		BankTransaction withdrawal = new BankWithdrawal(feesCalculator);
+		BankTransaction deposit = new BankDeposit(feesCalculator);
+		BankTransaction transfer = new BankTransfer(feesCalculator);
 		BankFacade facade = new BankFacade(dbHandler, withdrawal, deposit, transfer);
 		
 		MessageDispatcher dispatcher;
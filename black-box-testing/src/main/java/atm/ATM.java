@@ -1,5 +1,10 @@
 package atm;
 
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import javax.swing.SwingUtilities;
+
 import atm.dispatcher.MessageDispatcher;
 import atm.exceptions.InvalidAmountException;
 import atm.exceptions.InvalidCardNumberException;
@@ -7,10 +12,11 @@ import atm.exceptions.InvalidCredentialsException;
 import atm.exceptions.InvalidPinFormatException;
 import atm.session.Session;
 import atm.session.transactions.ATMTransactionFactory;
-import atm.ui.panels.MainPanel;
+import atm.ui.ATMDisplay;
 import atm.utils.CredentialsCheck;
 import atm.utils.FormatChecker;
 import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionResult;
 import bank.transactions.utils.TransactionType;
 
 public class ATM {
@@ -18,7 +24,8 @@ public class ATM {
 	private FormatChecker formatCheck;
 	private CredentialsCheck credentialsCheck;
 	private MessageDispatcher dispatcher;
-	private MainPanel mainPanel;
+	private ATMDisplay mainPanel;
+	private Executor callbackExecutor = SwingUtilities::invokeLater;
 
 	public ATM(FormatChecker formatCheck, CredentialsCheck credentialsCheck, MessageDispatcher dispatcher) {
 		super();
@@ -27,13 +34,18 @@ public class ATM {
 		this.dispatcher = dispatcher;
 	}
 
-	public void setMainPanel(MainPanel mainPanel) {
+	public void setMainPanel(ATMDisplay mainPanel) {
 		this.mainPanel = mainPanel;
 	}
 
+	// Runs the session's reaction to an async bank answer, the Swing event thread by default
+	public void setCallbackExecutor(Executor callbackExecutor) {
+		this.callbackExecutor = callbackExecutor;
+	}
+
 
 	public void createSession() {
-		session = new Session(mainPanel, dispatcher);
+		session = new Session(mainPanel, dispatcher, callbackExecutor);
 		session.insertCard();
 	}
 	
@@ -44,8 +56,14 @@ public class ATM {
 
 	public void checkPin(char[] pin) throws InvalidCredentialsException, InvalidPinFormatException {
 		formatCheck.checkPinFormat(pin);
-		credentialsCheck.perform(session.getCard(), pin);
-		session.addPin(pin);
+		String sessionToken;
+		try {
+			sessionToken = credentialsCheck.perform(session.getCard(), pin);
+		} finally {
+			// Only the token outlives the check
+			Arrays.fill(pin, '\0');
+		}
+		session.addSessionToken(sessionToken);
 	}
 
 	public void setTransaction(TransactionType type) {
@@ -69,6 +87,11 @@ public class ATM {
 		
 	}
 
+	public TransactionResult getResult() {
+		Session current = session;
+		return current == null ? null : current.getResult();
+	}
+
 	public void anotherTransaction() {
 		session.newTransaction();
 	}
@@ -0,0 +1,13 @@
+package atm.dispatcher;
+
+import java.util.concurrent.CompletableFuture;
+
+import atm.session.transactions.ATMTransaction;
+import bank.transactions.utils.TransactionResult;
+
+// The futures complete on a dispatcher thread, never on the caller's
+public interface AsyncMessageDispatcher extends MessageDispatcher {
+	public CompletableFuture<String> loginAsync(String cardNumber, char[] pin);
+	public CompletableFuture<TransactionResult> performTransactionAsync(String cardNumber, String sessionToken,
+			ATMTransaction transaction);
+}
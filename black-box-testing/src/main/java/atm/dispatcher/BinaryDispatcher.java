@@ -0,0 +1,151 @@
+package atm.dispatcher;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.UUID;
+
+import atm.session.transactions.ATMTransaction;
+import bank.BinaryServer;
+import bank.exceptions.WireFormatException;
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+import bank.transactions.utils.TransactionType;
+import bank.wire.WireCodec;
+
+// Talks to a BinaryServer over one kept-open TCP connection
+public class BinaryDispatcher implements MessageDispatcher {
+	private InetSocketAddress address;
+	private RetryPolicy retryPolicy = new RetryPolicy();
+	private SocketChannel channel;
+	private ByteBuffer out = ByteBuffer.allocateDirect(WireCodec.MAX_FRAME);
+	private ByteBuffer in = ByteBuffer.allocateDirect(WireCodec.MAX_FRAME);
+
+	public BinaryDispatcher() {
+		this(new InetSocketAddress("localhost", BinaryServer.DEFAULT_PORT));
+	}
+
+	public BinaryDispatcher(InetSocketAddress address) {
+		super();
+		this.address = address;
+	}
+
+	@Override
+	public boolean checkCredentials(String cardNumber, char[] pin) {
+		return login(cardNumber, pin) != null;
+	}
+
+	@Override
+	public synchronized String login(String cardNumber, char[] pin) {
+		out.clear();
+		WireCodec.writeCredentials(out, cardNumber, pin);
+		String sessionToken = null;
+		ByteBuffer response = sendMessage("checkCredentials", WireCodec.SESSION_TOKEN);
+		if (response != null) {
+			try {
+				sessionToken = WireCodec.readSessionToken(response);
+			} catch (WireFormatException e) {
+				System.out.println("checkCredentials: " + e.getMessage());
+			}
+		}
+		return sessionToken;
+	}
+
+	@Override
+	public synchronized TransactionResult performTransaction(String cardNumber, String sessionToken,
+			ATMTransaction transaction) {
+		TransactionType transactionType = transaction.getTransactionType();
+		AccountType[] accounts = new AccountType[2];
+		if (transactionType == TransactionType.Withdrawal) {
+			accounts[0] = transaction.getFromAccount();
+		} else if (transactionType == TransactionType.Deposit) {
+			accounts[0] = transaction.getToAccount();
+		} else if (transactionType == TransactionType.Transfer) {
+			accounts[0] = transaction.getFromAccount();
+			accounts[1] = transaction.getToAccount();
+		}
+
+		TransactionData data = new TransactionData(cardNumber, sessionToken, transactionType, accounts,
+				transaction.getAmount());
+		// The frame is sent again as is on a retry, so the bank sees the same key
+		data.setIdempotencyKey(UUID.randomUUID().toString());
+		out.clear();
+		WireCodec.writeTransaction(out, data);
+		ByteBuffer response = sendMessage("performTransaction", WireCodec.TRANSACTION_RESULT);
+		if (response == null)
+			return null;
+		try {
+			return WireCodec.readResult(response);
+		} catch (WireFormatException e) {
+			System.out.println("performTransaction: " + e.getMessage());
+			return null;
+		}
+	}
+
+	public synchronized void close() {
+		closeChannel();
+	}
+
+	// Sends the frame in out and returns the payload of the reply, positioned after the opcode
+	private ByteBuffer sendMessage(String endpoint, byte expectedOpcode) {
+		out.flip();
+		// A lost connection is reopened and the message sent again, with the same backoff as the REST dispatcher
+		for (int attempt = 1; attempt <= retryPolicy.getMaxAttempts(); attempt++) {
+			try {
+				if (attempt > 1)
+					Thread.sleep(retryPolicy.backoffMillis(attempt - 1));
+				if (channel == null || !channel.isOpen()) {
+					channel = SocketChannel.open(address);
+					channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				}
+				while (out.hasRemaining()) {
+					channel.write(out);
+				}
+
+				in.clear();
+				int length;
+				in.flip();
+				while ((length = WireCodec.frameLength(in)) < 0) {
+					in.compact();
+					if (channel.read(in) < 0)
+						throw new IOException("Connection closed by the bank");
+					in.flip();
+				}
+				in.limit(in.position() + WireCodec.LENGTH_PREFIX + length);
+				byte opcode = WireCodec.readOpcode(in);
+				if (opcode != expectedOpcode)
+					throw new WireFormatException("Unexpected opcode " + opcode);
+				return in;
+			} catch (IOException e) {
+				// Never log the message, it can hold the PIN
+				System.out.println(endpoint + ": " + e.getMessage());
+				closeChannel();
+				if (Thread.currentThread().isInterrupted())
+					return null;
+				out.rewind();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (WireFormatException e) {
+				System.out.println(endpoint + ": " + e.getMessage());
+				closeChannel();
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private void closeChannel() {
+		if (channel == null)
+			return;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			System.out.println("binary dispatcher: " + e.getMessage());
+		}
+		channel = null;
+	}
+}
@@ -0,0 +1,66 @@
+package atm.dispatcher;
+
+import java.time.Duration;
+
+// Stops calls to an endpoint after repeated failures, then lets a single probe through to test for recovery
+public class CircuitBreaker {
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(1);
+
+	public enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	private int failureThreshold;
+	private long openNanos;
+	private State state = State.CLOSED;
+	private int failures;
+	private long openedAt;
+
+	public CircuitBreaker() {
+		this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION);
+	}
+
+	public CircuitBreaker(int failureThreshold, Duration openDuration) {
+		super();
+		if (failureThreshold < 1)
+			throw new IllegalArgumentException("The failure threshold must be at least 1");
+		this.failureThreshold = failureThreshold;
+		this.openNanos = openDuration.toNanos();
+	}
+
+	// Every allowed call has to report back through onSuccess or onFailure
+	public synchronized boolean allowRequest() {
+		switch (state) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if (System.nanoTime() - openedAt < openNanos)
+				return false;
+			state = State.HALF_OPEN;
+			return true;
+		default:
+			// The probe is still out
+			return false;
+		}
+	}
+
+	public synchronized void onSuccess() {
+		state = State.CLOSED;
+		failures = 0;
+	}
+
+	public synchronized void onFailure() {
+		failures++;
+		if (state == State.HALF_OPEN || failures >= failureThreshold) {
+			state = State.OPEN;
+			openedAt = System.nanoTime();
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+}
@@ -1,5 +1,10 @@
 package atm.dispatcher;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import atm.session.transactions.ATMTransaction;
 import atm.session.transactions.ATMWithdrawal;
 import bank.BankFacade;
@@ -11,21 +16,48 @@ import bank.transactions.utils.TransactionData;
 import bank.transactions.utils.TransactionResult;
 import bank.transactions.utils.TransactionType;
 
-public class JavaDispatcher implements MessageDispatcher {
+public class JavaDispatcher implements AsyncMessageDispatcher {
+	public static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
 	private BankFacade bankFacade;
+	// The facade blocks on the database, so async calls run on this pool instead of the caller's thread
+	private Executor executor;
 
 	public JavaDispatcher(BankFacade bankFacade) {
+		this(bankFacade, createPool(DEFAULT_POOL_SIZE));
+	}
+
+	public JavaDispatcher(BankFacade bankFacade, Executor executor) {
 		super();
 		this.bankFacade = bankFacade;
+		this.executor = executor;
 	}
 
 	public boolean checkCredentials(String cardNumber, char[] pin) {
+		return login(cardNumber, pin) != null;
+	}
+
+	public String login(String cardNumber, char[] pin) {
 		return bankFacade.checkCredentials(cardNumber, pin);
 	}
 
-	public TransactionResult performTransaction(String cardNumber, char[] pin, ATMTransaction transaction) {
+	public CompletableFuture<String> loginAsync(String cardNumber, char[] pin) {
+		return CompletableFuture.supplyAsync(() -> login(cardNumber, pin), executor);
+	}
+
+	public TransactionResult performTransaction(String cardNumber, String sessionToken, ATMTransaction transaction) {
+		return bankFacade.performTransaction(transactionData(cardNumber, sessionToken, transaction));
+	}
+
+	public CompletableFuture<TransactionResult> performTransactionAsync(String cardNumber, String sessionToken,
+			ATMTransaction transaction) {
+		// Copied now, the session may change the transaction while the bank works on it
+		TransactionData data = transactionData(cardNumber, sessionToken, transaction);
+		return CompletableFuture.supplyAsync(() -> bankFacade.performTransaction(data), executor);
+	}
+
+	private TransactionData transactionData(String cardNumber, String sessionToken, ATMTransaction transaction) {
 		TransactionType transactionType = transaction.getTransactionType();
-		TransactionResult result;
 		
 		AccountType[] accounts;
 		switch (transactionType) {
@@ -46,11 +78,17 @@ public class JavaDispatcher implements MessageDispatcher {
 			accounts = null;
 		}
 		
-		double amount = transaction.getAmount();
-		TransactionData bankTransaction = new TransactionData(cardNumber, pin, transactionType, accounts, amount);
-		result = bankFacade.performTransaction(bankTransaction);
-		
-		return result;
+		long amount = transaction.getAmount();
+		return new TransactionData(cardNumber, sessionToken, transactionType, accounts, amount);
+	}
+
+	private static Executor createPool(int poolSize) {
+		AtomicInteger count = new AtomicInteger();
+		return Executors.newFixedThreadPool(poolSize, runnable -> {
+			Thread thread = new Thread(runnable, "atm-dispatcher-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 
 }
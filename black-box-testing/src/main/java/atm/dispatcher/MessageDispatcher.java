@@ -5,5 +5,9 @@ import bank.transactions.utils.TransactionResult;
 
 public interface MessageDispatcher {
 	public boolean checkCredentials(String cardNumber, char[] pin);
-	public TransactionResult performTransaction(String cardNumber, char[] pin, ATMTransaction transaction);
+	// The session token the bank issued for the card, null when the credentials are wrong or the bank could not be
+	// reached. The caller keeps it, nothing is stored in the dispatcher
+	public String login(String cardNumber, char[] pin);
+	// Null when the bank could not be reached
+	public TransactionResult performTransaction(String cardNumber, String sessionToken, ATMTransaction transaction);
 }
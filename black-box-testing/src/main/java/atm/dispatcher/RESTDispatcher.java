@@ -1,44 +1,119 @@
 package atm.dispatcher;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.lang.reflect.Type;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonSyntaxException;
 
+import atm.exceptions.BankUnavailableException;
 import atm.session.transactions.ATMTransaction;
+import bank.json.Credentials;
+import bank.json.JsonCodec;
 import bank.transactions.utils.AccountType;
 import bank.transactions.utils.TransactionData;
 import bank.transactions.utils.TransactionResult;
 import bank.transactions.utils.TransactionType;
 
-public class RESTDispatcher implements MessageDispatcher {
-	private Gson gson = new Gson();
+public class RESTDispatcher implements AsyncMessageDispatcher {
+	public static final String DEFAULT_BASE_URL = "http://localhost:9000/";
+	public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(2);
+	public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+	private JsonCodec codec = new JsonCodec();
+	private String baseUrl;
+	private Duration requestTimeout;
+	private RetryPolicy retryPolicy;
+	private int failureThreshold;
+	private Duration openDuration;
+	// One breaker per endpoint, so a failing endpoint does not block the others
+	private Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+	// One client for the dispatcher, it keeps connections to the bank open between messages
+	private HttpClient client;
+
+	public RESTDispatcher() {
+		this(DEFAULT_BASE_URL, DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT);
+	}
+
+	public RESTDispatcher(String baseUrl, Duration connectTimeout, Duration requestTimeout) {
+		this(baseUrl, connectTimeout, requestTimeout, new RetryPolicy(), CircuitBreaker.DEFAULT_FAILURE_THRESHOLD,
+				CircuitBreaker.DEFAULT_OPEN_DURATION);
+	}
+
+	public RESTDispatcher(String baseUrl, Duration connectTimeout, Duration requestTimeout, RetryPolicy retryPolicy,
+			int failureThreshold, Duration openDuration) {
+		super();
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+		this.requestTimeout = requestTimeout;
+		this.retryPolicy = retryPolicy;
+		this.failureThreshold = failureThreshold;
+		this.openDuration = openDuration;
+		this.client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(connectTimeout)
+				.build();
+	}
 
 	@Override
 	public boolean checkCredentials(String cardNumber, char[] pin) {
-		Map<String, String> credentials = new HashMap<>();
-		credentials.put("cardNumber", cardNumber);
-		credentials.put("pin", String.valueOf(pin));
-		String message = gson.toJson(credentials);
-		String response = sendMessage("checkCredentials", message);
-		
-		return Boolean.parseBoolean(response);
-		
+		return login(cardNumber, pin) != null;
+	}
+
+	@Override
+	public String login(String cardNumber, char[] pin) {
+		return sendMessage("checkCredentials", credentialsMessage(cardNumber, pin), codec::readSessionToken);
+	}
+
+	@Override
+	public CompletableFuture<String> loginAsync(String cardNumber, char[] pin) {
+		return sendMessageAsync("checkCredentials", credentialsMessage(cardNumber, pin)).thenApply(response -> {
+			try {
+				return codec.readSessionToken(new ByteArrayInputStream(response));
+			} catch (IOException e) {
+				throw new JsonSyntaxException(e);
+			}
+		});
+	}
+
+	private byte[] credentialsMessage(String cardNumber, char[] pin) {
+		ByteArrayOutputStream message = new ByteArrayOutputStream(64);
+		try {
+			codec.writeCredentials(message, new Credentials(cardNumber, pin));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return message.toByteArray();
 	}
 
 	@Override
-	public TransactionResult performTransaction(String cardNumber, char[] pin, ATMTransaction transaction) {
+	public TransactionResult performTransaction(String cardNumber, String sessionToken, ATMTransaction transaction) {
+		return sendMessage("performTransaction", transactionMessage(cardNumber, sessionToken, transaction),
+				codec::readTransactionResult);
+	}
+
+	@Override
+	public CompletableFuture<TransactionResult> performTransactionAsync(String cardNumber, String sessionToken,
+			ATMTransaction transaction) {
+		byte[] message = transactionMessage(cardNumber, sessionToken, transaction);
+		return sendMessageAsync("performTransaction", message).thenApply(this::parseResult);
+	}
+
+	private byte[] transactionMessage(String cardNumber, String sessionToken, ATMTransaction transaction) {
 		TransactionType transactionType = transaction.getTransactionType();
-		double amount = transaction.getAmount();
+		long amount = transaction.getAmount();
 		
 		AccountType[] accounts = new AccountType[2];
 		if (transactionType == TransactionType.Withdrawal) {
@@ -50,56 +125,151 @@ public class RESTDispatcher implements MessageDispatcher {
 			accounts[1] = transaction.getToAccount();
 		}
 		
-		TransactionData data = new TransactionData(cardNumber, pin, transactionType, accounts, amount);
-		String message = gson.toJson(data);
-		String response = sendMessage("performTransaction", message);	
-		
-		Type type = new TypeToken<TransactionResult>() {}.getType();
-		TransactionResult result = gson.fromJson(response, type);
-		return result;
+		TransactionData data = new TransactionData(cardNumber, sessionToken, transactionType, accounts, amount);
+		// The message is sent again as is on a retry, so the bank sees the same key
+		data.setIdempotencyKey(UUID.randomUUID().toString());
+		ByteArrayOutputStream message = new ByteArrayOutputStream(160);
+		try {
+			codec.writeTransactionData(message, data);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return message.toByteArray();
+	}
+
+	private TransactionResult parseResult(byte[] response) {
+		try {
+			return codec.readTransactionResult(new ByteArrayInputStream(response));
+		} catch (IOException e) {
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	private HttpRequest request(String endpoint, byte[] message) {
+		return HttpRequest.newBuilder(URI.create(baseUrl + endpoint))
+				.timeout(requestTimeout)
+				.header("Content-Type", "application/json; utf-8")
+				.POST(HttpRequest.BodyPublishers.ofByteArray(message))
+				.build();
 	}
-	
-	private String sendMessage(String endpoint, String message) {
-		URL url;
-		
-		//TODO How many retries??
-		while (true) {
-			try {
-				System.out.println("Sending message => " + message);
-				url = new URL("http://localhost:9000/" + endpoint);
 
-				HttpURLConnection con = (HttpURLConnection) url.openConnection();
-				con.setRequestMethod("POST");
+	public CircuitBreaker.State getCircuitState(String endpoint) {
+		return breaker(endpoint).getState();
+	}
+
+	private CircuitBreaker breaker(String endpoint) {
+		return breakers.computeIfAbsent(endpoint, e -> new CircuitBreaker(failureThreshold, openDuration));
+	}
 
-				con.setRequestProperty("Content-Type", "application/json; utf-8");
-				con.setDoOutput(true);
+	// Returns null when the bank could not be reached within the retry policy
+	private <T> T sendMessage(String endpoint, byte[] message, ResponseReader<T> reader) {
+		HttpRequest request = request(endpoint, message);
+		CircuitBreaker breaker = breaker(endpoint);
+		long retryAfterMillis = 0;
 
-				try (OutputStream os = con.getOutputStream()) {
-					byte[] input = message.getBytes("utf-8");
-					os.write(input, 0, input.length);
+		for (int attempt = 1; attempt <= retryPolicy.getMaxAttempts(); attempt++) {
+			if (attempt > 1) {
+				try {
+					Thread.sleep(Math.max(retryAfterMillis, retryPolicy.backoffMillis(attempt - 1)));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
 				}
+			}
+			if (!breaker.allowRequest()) {
+				// Fail fast while the bank is known to be down
+				System.out.println(endpoint + ": circuit open");
+				return null;
+			}
 
-				int responseCode = con.getResponseCode();
-				
-				if (responseCode == 200) {
-					try(BufferedReader br = new BufferedReader(new InputStreamReader(con.getInputStream(), "utf-8"))) {
-						StringBuilder response = new StringBuilder();
-						String responseLine = null;
-						while ((responseLine = br.readLine()) != null) {
-							response.append(responseLine.trim());
-						}
-						System.out.println(response.toString());
-						return response.toString();
+			int statusCode;
+			try {
+				HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+				statusCode = response.statusCode();
+				retryAfterMillis = retryAfterMillis(response);
+				// The body is parsed as it arrives and always closed, so the connection goes back to the pool
+				try (InputStream body = response.body()) {
+					if (statusCode == 200) {
+						T result = reader.read(body);
+						breaker.onSuccess();
+						return result;
 					}
 				}
-			} catch (MalformedURLException e) {
-				System.out.println(e.getMessage());
-				e.printStackTrace();
 			} catch (IOException e) {
-				System.out.println(e.getMessage());
-				e.printStackTrace();
+				breaker.onFailure();
+				System.out.println(endpoint + ": " + e.getMessage());
+				continue;
+			} catch (InterruptedException e) {
+				breaker.onFailure();
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (RuntimeException e) {
+				// The bank answered, only the body was wrong
+				breaker.onSuccess();
+				System.out.println(endpoint + ": " + e.getMessage());
+				return null;
+			}
+
+			// Never log the message, it can hold the PIN
+			System.out.println(endpoint + ": HTTP " + statusCode);
+			if (statusCode < 500) {
+				// The bank is up and refused the message, sending it again will not help
+				breaker.onSuccess();
+				return null;
 			}
+			breaker.onFailure();
+		}
+		return null;
+	}
+
+	private CompletableFuture<byte[]> sendMessageAsync(String endpoint, byte[] message) {
+		return attemptAsync(endpoint, request(endpoint, message), 1);
+	}
+
+	private CompletableFuture<byte[]> attemptAsync(String endpoint, HttpRequest request, int attempt) {
+		CircuitBreaker breaker = breaker(endpoint);
+		if (!breaker.allowRequest())
+			return CompletableFuture.failedFuture(new BankUnavailableException(endpoint + ": circuit open"));
+
+		// Buffered, so parsing never blocks a client thread waiting on the network
+		return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+				.handle((response, error) -> {
+					if (error == null && response.statusCode() == 200) {
+						breaker.onSuccess();
+						return CompletableFuture.completedFuture(response.body());
+					}
+					String reason = error == null ? "HTTP " + response.statusCode() : error.getMessage();
+					System.out.println(endpoint + ": " + reason);
+					if (error == null && response.statusCode() < 500) {
+						breaker.onSuccess();
+						return CompletableFuture.<byte[]>failedFuture(new IllegalStateException(endpoint + ": " + reason));
+					}
+
+					breaker.onFailure();
+					if (attempt >= retryPolicy.getMaxAttempts())
+						return CompletableFuture.<byte[]>failedFuture(new BankUnavailableException(endpoint + ": " + reason));
+					// The retry waits on a timer instead of a sleeping thread
+					long delay = Math.max(retryPolicy.backoffMillis(attempt), retryAfterMillis(response));
+					Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS);
+					return CompletableFuture.supplyAsync(() -> attempt + 1, delayed)
+							.thenCompose(next -> attemptAsync(endpoint, request, next));
+				})
+				.thenCompose(Function.identity());
+	}
+
+	// An overloaded bank says how long to stay away, in seconds
+	private static long retryAfterMillis(HttpResponse<?> response) {
+		if (response == null)
+			return 0;
+		try {
+			return response.headers().firstValue("Retry-After").map(Long::parseLong).orElse(0L) * 1000;
+		} catch (NumberFormatException e) {
+			return 0;
 		}
 	}
 
+	private interface ResponseReader<T> {
+		T read(InputStream body) throws IOException;
+	}
+
 }
@@ -0,0 +1,41 @@
+package atm.dispatcher;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class RetryPolicy {
+	public static final int DEFAULT_MAX_ATTEMPTS = 4;
+	public static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(100);
+	public static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(2);
+
+	private int maxAttempts;
+	private long baseDelayMillis;
+	private long maxDelayMillis;
+
+	public RetryPolicy() {
+		this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+	}
+
+	public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+		super();
+		if (maxAttempts < 1)
+			throw new IllegalArgumentException("At least one attempt is needed");
+		this.maxAttempts = maxAttempts;
+		this.baseDelayMillis = baseDelay.toMillis();
+		this.maxDelayMillis = maxDelay.toMillis();
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	// Delay before the given retry, 1 for the first one: doubles up to the cap, then half of it is random
+	// so ATMs that failed together do not come back together
+	public long backoffMillis(int retry) {
+		int shift = Math.min(retry - 1, 30);
+		long cap = Math.min(maxDelayMillis, baseDelayMillis << shift);
+		if (cap <= 1)
+			return cap;
+		return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+	}
+}
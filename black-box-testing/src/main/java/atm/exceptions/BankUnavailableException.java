@@ -0,0 +1,9 @@
+package atm.exceptions;
+
+public class BankUnavailableException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	public BankUnavailableException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,244 @@
+package atm.fleet;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import atm.ATM;
+import atm.dispatcher.JavaDispatcher;
+import atm.dispatcher.MessageDispatcher;
+import atm.dispatcher.RESTDispatcher;
+import atm.exceptions.InvalidAmountException;
+import atm.exceptions.InvalidCardNumberException;
+import atm.exceptions.InvalidCredentialsException;
+import atm.exceptions.InvalidPinFormatException;
+import atm.ui.HeadlessDisplay;
+import atm.utils.CredentialsCheck;
+import atm.utils.FormatChecker;
+import bank.BankFacade;
+import bank.BankServer;
+import bank.BankServerConfig;
+import bank.db.DBHandler;
+import bank.transactions.BankDeposit;
+import bank.transactions.BankTransfer;
+import bank.transactions.BankWithdrawal;
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionResult;
+import bank.transactions.utils.TransactionType;
+import bank.utils.FeesCalculator;
+
+// Drives many headless ATMs at once, each one walks its customer from card to result the way the panels would
+public class ATMFleet {
+	// Valid for withdrawals and deposits alike
+	private static final int[] AMOUNTS = { 20, 40, 50, 100 };
+
+	private FleetConfig config;
+	private MessageDispatcher dispatcher;
+	private List<String> cards;
+	private List<String> pins;
+
+	// ATMs share the cards round robin when there are fewer cards than ATMs
+	public ATMFleet(FleetConfig config, MessageDispatcher dispatcher, Map<String, String> cards) {
+		super();
+		if (cards.isEmpty())
+			throw new IllegalArgumentException("The fleet needs at least one card");
+		this.config = config;
+		this.dispatcher = dispatcher;
+		this.cards = new ArrayList<>(cards.keySet());
+		this.pins = new ArrayList<>(cards.values());
+	}
+
+	public FleetReport run() throws InterruptedException {
+		FleetReport report = new FleetReport();
+		ExecutorService threads = createExecutor();
+		long start = System.nanoTime();
+		for (int i = 0; i < config.getAtmCount(); i++) {
+			final int atm = i;
+			threads.execute(() -> drive(atm, report));
+		}
+		threads.shutdown();
+		threads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		report.setElapsedNanos(System.nanoTime() - start);
+		return report;
+	}
+
+	private void drive(int index, FleetReport report) {
+		HeadlessDisplay display = new HeadlessDisplay();
+		ATM atm = new ATM(new FormatChecker(), new CredentialsCheck(dispatcher), dispatcher);
+		atm.setMainPanel(display);
+		// The answer is shown on the dispatcher's thread, this thread waits for the Result layout
+		atm.setCallbackExecutor(Runnable::run);
+		String card = cards.get(index % cards.size());
+		String pin = pins.get(index % cards.size());
+
+		try {
+			for (int session = 0; session < config.getSessionsPerAtm(); session++) {
+				TransactionType type = pickType();
+				if (!runSession(atm, display, card, pin, type, report))
+					// A late answer would be taken for the next session's
+					return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// False when the bank did not answer in time
+	private boolean runSession(ATM atm, HeadlessDisplay display, String card, String pin, TransactionType type,
+			FleetReport report) throws InterruptedException {
+		try {
+			atm.createSession();
+			think();
+			atm.checkCardNumber(card);
+			think();
+			atm.checkPin(pin.toCharArray());
+			think();
+			atm.setTransaction(type);
+			think();
+			if (type == TransactionType.Deposit) {
+				atm.setToAccount(AccountType.Chequing);
+			} else {
+				atm.setFromAccount(AccountType.Chequing);
+				if (type == TransactionType.Transfer) {
+					think();
+					atm.setToAccount(AccountType.Savings);
+				}
+			}
+			think();
+
+			int amount = AMOUNTS[ThreadLocalRandom.current().nextInt(AMOUNTS.length)];
+			long start;
+			if (type == TransactionType.Deposit) {
+				atm.setAmount(amount);
+				think();
+				start = System.nanoTime();
+				atm.insertMoney(amount);
+			} else {
+				start = System.nanoTime();
+				atm.setAmount(amount);
+			}
+			boolean answered = display.awaitLayout("Result", config.getResultTimeoutMillis());
+			long took = System.nanoTime() - start;
+			TransactionResult result = atm.getResult();
+			report.record(type, answered && result != null && result.isSuccessful(), took);
+			return answered;
+		} catch (InvalidCardNumberException | InvalidPinFormatException | InvalidCredentialsException
+				| InvalidAmountException e) {
+			report.record(type, false, 0);
+			return true;
+		} finally {
+			atm.endSession();
+		}
+	}
+
+	private TransactionType pickType() {
+		int total = 0;
+		for (int weight : config.getMix().values())
+			total += weight;
+		int pick = ThreadLocalRandom.current().nextInt(total);
+		for (Map.Entry<TransactionType, Integer> entry : config.getMix().entrySet()) {
+			pick -= entry.getValue();
+			if (pick < 0)
+				return entry.getKey();
+		}
+		throw new IllegalStateException("Empty transaction mix");
+	}
+
+	private void think() throws InterruptedException {
+		long min = config.getMinThinkMillis();
+		long max = config.getMaxThinkMillis();
+		long millis = min == max ? min : ThreadLocalRandom.current().nextLong(min, max + 1);
+		if (millis > 0)
+			Thread.sleep(millis);
+	}
+
+	private ExecutorService createExecutor() {
+		try {
+			// Looked up at runtime, the sources target Java 11
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			System.out.println("Virtual threads are not available, using one platform thread per ATM");
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	// Seeds a throwaway bank with one customer per ATM and runs the fleet against it,
+	// -Datm.fleet.dispatcher=rest goes through a BankServer instead of calling the facade
+	public static void main(String[] args) throws Exception {
+		FleetConfig config = FleetConfig.fromSystemProperties();
+		Path dir = Files.createTempDirectory("atm-fleet");
+		String url = "jdbc:sqlite:" + dir.resolve("bank.db");
+		DBHandler dbHandler = new DBHandler(url, DBHandler.DEFAULT_POOL_SIZE);
+		Map<String, String> cards = seed(url, config.getAtmCount());
+		dbHandler.enableProfileCache(DBHandler.DEFAULT_PROFILE_CACHE_SIZE, DBHandler.DEFAULT_PROFILE_CACHE_TTL_MILLIS);
+		FeesCalculator feesCalculator = new FeesCalculator();
+		BankFacade facade = new BankFacade(dbHandler, new BankWithdrawal(feesCalculator),
+				new BankDeposit(feesCalculator), new BankTransfer(feesCalculator));
+
+		BankServer server = null;
+		MessageDispatcher dispatcher;
+		if ("rest".equalsIgnoreCase(System.getProperty("atm.fleet.dispatcher", "java"))) {
+			server = new BankServer(facade, new BankServerConfig("127.0.0.1", 0, 0,
+					BankServerConfig.ExecutionMode.VIRTUAL_THREADS, BankServerConfig.DEFAULT_POOL_SIZE));
+			server.start();
+			dispatcher = new RESTDispatcher("http://127.0.0.1:" + server.getAddress().getPort(),
+					RESTDispatcher.DEFAULT_CONNECT_TIMEOUT, RESTDispatcher.DEFAULT_REQUEST_TIMEOUT);
+		} else {
+			dispatcher = new JavaDispatcher(facade);
+		}
+
+		try {
+			new ATMFleet(config, dispatcher, cards).run().print(System.out);
+		} finally {
+			if (server != null)
+				server.stop(0);
+			dbHandler.close();
+		}
+		System.exit(0);
+	}
+
+	static Map<String, String> seed(String url, int count) throws SQLException {
+		Map<String, String> cards = new LinkedHashMap<>();
+		try (Connection conn = DriverManager.getConnection(url)) {
+			conn.setAutoCommit(false);
+			try (PreparedStatement client = conn.prepareStatement("INSERT INTO clients VALUES (?, 'Fleet', ?, 0);");
+					PreparedStatement cardRow = conn.prepareStatement("INSERT INTO cards VALUES (?, ?, '1234');");
+					PreparedStatement account = conn.prepareStatement("INSERT INTO accounts VALUES (?, ?, 1000000);")) {
+				for (int i = 0; i < count; i++) {
+					String username = "fleet" + i;
+					String card = String.format("4%015d", i);
+					client.setString(1, username);
+					client.setString(2, String.valueOf(i));
+					client.addBatch();
+					cardRow.setString(1, card);
+					cardRow.setString(2, username);
+					cardRow.addBatch();
+					for (AccountType type : new AccountType[] { AccountType.Chequing, AccountType.Savings }) {
+						account.setString(1, username);
+						account.setInt(2, type.ordinal());
+						account.addBatch();
+					}
+					cards.put(card, "1234");
+				}
+				client.executeBatch();
+				cardRow.executeBatch();
+				account.executeBatch();
+			}
+			conn.commit();
+		}
+		return cards;
+	}
+}
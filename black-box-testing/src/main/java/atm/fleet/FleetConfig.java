@@ -0,0 +1,88 @@
+package atm.fleet;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import bank.transactions.utils.TransactionType;
+
+public class FleetConfig {
+	public static final int DEFAULT_ATM_COUNT = 1000;
+	public static final int DEFAULT_SESSIONS_PER_ATM = 10;
+	public static final long DEFAULT_MIN_THINK_MILLIS = 50;
+	public static final long DEFAULT_MAX_THINK_MILLIS = 500;
+	public static final long DEFAULT_RESULT_TIMEOUT_MILLIS = 30000;
+	public static final String DEFAULT_MIX = "Withdrawal:5,Deposit:3,Transfer:2";
+
+	private int atmCount;
+	private int sessionsPerAtm;
+	// Relative weights, a type left out is never picked
+	private Map<TransactionType, Integer> mix;
+	private long minThinkMillis;
+	private long maxThinkMillis;
+	private long resultTimeoutMillis;
+
+	public FleetConfig() {
+		this(DEFAULT_ATM_COUNT, DEFAULT_SESSIONS_PER_ATM, parseMix(DEFAULT_MIX), DEFAULT_MIN_THINK_MILLIS,
+				DEFAULT_MAX_THINK_MILLIS, DEFAULT_RESULT_TIMEOUT_MILLIS);
+	}
+
+	public FleetConfig(int atmCount, int sessionsPerAtm, Map<TransactionType, Integer> mix, long minThinkMillis,
+			long maxThinkMillis, long resultTimeoutMillis) {
+		super();
+		if (minThinkMillis < 0 || maxThinkMillis < minThinkMillis)
+			throw new IllegalArgumentException("Think time must satisfy 0 <= min <= max");
+		this.atmCount = atmCount;
+		this.sessionsPerAtm = sessionsPerAtm;
+		this.mix = new EnumMap<>(mix);
+		this.minThinkMillis = minThinkMillis;
+		this.maxThinkMillis = maxThinkMillis;
+		this.resultTimeoutMillis = resultTimeoutMillis;
+	}
+
+	public static FleetConfig fromSystemProperties() {
+		// -Datm.fleet.atms, -Datm.fleet.sessions, -Datm.fleet.mix, -Datm.fleet.minThink, -Datm.fleet.maxThink
+		// and -Datm.fleet.resultTimeout
+		return new FleetConfig(Integer.getInteger("atm.fleet.atms", DEFAULT_ATM_COUNT),
+				Integer.getInteger("atm.fleet.sessions", DEFAULT_SESSIONS_PER_ATM),
+				parseMix(System.getProperty("atm.fleet.mix", DEFAULT_MIX)),
+				Long.getLong("atm.fleet.minThink", DEFAULT_MIN_THINK_MILLIS),
+				Long.getLong("atm.fleet.maxThink", DEFAULT_MAX_THINK_MILLIS),
+				Long.getLong("atm.fleet.resultTimeout", DEFAULT_RESULT_TIMEOUT_MILLIS));
+	}
+
+	// "Withdrawal:5,Deposit:3,Transfer:2"
+	public static Map<TransactionType, Integer> parseMix(String mix) {
+		Map<TransactionType, Integer> weights = new EnumMap<>(TransactionType.class);
+		for (String entry : mix.split(",")) {
+			String[] parts = entry.trim().split(":");
+			if (parts.length != 2)
+				throw new IllegalArgumentException("Expected type:weight, got " + entry);
+			weights.put(TransactionType.valueOf(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+		}
+		return weights;
+	}
+
+	public int getAtmCount() {
+		return atmCount;
+	}
+
+	public int getSessionsPerAtm() {
+		return sessionsPerAtm;
+	}
+
+	public Map<TransactionType, Integer> getMix() {
+		return mix;
+	}
+
+	public long getMinThinkMillis() {
+		return minThinkMillis;
+	}
+
+	public long getMaxThinkMillis() {
+		return maxThinkMillis;
+	}
+
+	public long getResultTimeoutMillis() {
+		return resultTimeoutMillis;
+	}
+}
@@ -0,0 +1,75 @@
+package atm.fleet;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import bank.metrics.LatencyHistogram;
+import bank.transactions.utils.TransactionType;
+
+// Per transaction type, the latency runs from the last input of the customer to the result on the display
+public class FleetReport {
+	private Map<TransactionType, TypeStats> stats;
+	private volatile long elapsedNanos;
+
+	public FleetReport() {
+		super();
+		stats = new EnumMap<>(TransactionType.class);
+		for (TransactionType type : TransactionType.values())
+			stats.put(type, new TypeStats());
+	}
+
+	public void record(TransactionType type, boolean successful, long nanos) {
+		TypeStats typeStats = stats.get(type);
+		typeStats.transactions.increment();
+		if (!successful)
+			typeStats.failures.increment();
+		// Sessions refused before the transaction was sent have nothing to time
+		if (nanos > 0)
+			typeStats.latency.record(nanos);
+	}
+
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public long getTransactions(TransactionType type) {
+		return stats.get(type).transactions.sum();
+	}
+
+	public long getFailures(TransactionType type) {
+		return stats.get(type).failures.sum();
+	}
+
+	public LatencyHistogram.Snapshot getLatency(TransactionType type) {
+		return stats.get(type).latency.snapshot();
+	}
+
+	// Transactions per second over the whole run
+	public double getThroughput(TransactionType type) {
+		return elapsedNanos == 0 ? 0 : getTransactions(type) * 1e9 / elapsedNanos;
+	}
+
+	public void print(PrintStream out) {
+		out.printf("%-12s %10s %10s %10s %10s %10s %10s%n", "type", "count", "failed", "tx/s", "mean ms", "p50 ms",
+				"p99 ms");
+		for (TransactionType type : TransactionType.values()) {
+			LatencyHistogram.Snapshot latency = getLatency(type);
+			double mean = latency.getCount() == 0 ? 0 : latency.getSumNanos() / 1e6 / latency.getCount();
+			out.printf("%-12s %10d %10d %10.1f %10.2f %10.2f %10.2f%n", type, getTransactions(type), getFailures(type),
+					getThroughput(type), mean, latency.percentileNanos(0.5) / 1e6, latency.percentileNanos(0.99) / 1e6);
+		}
+		out.printf("%.1f s%n", elapsedNanos / 1e9);
+	}
+
+	private static class TypeStats {
+		private LongAdder transactions = new LongAdder();
+		private LongAdder failures = new LongAdder();
+		private LatencyHistogram latency = new LatencyHistogram();
+	}
+}
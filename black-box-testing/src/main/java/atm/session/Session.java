@@ -1,33 +1,50 @@
 package atm.session;
 
+import java.util.concurrent.Executor;
+
+import javax.swing.SwingUtilities;
+
+import atm.dispatcher.AsyncMessageDispatcher;
 import atm.dispatcher.MessageDispatcher;
 import atm.exceptions.InvalidAmountException;
+import atm.session.states.CardNumberState;
 import atm.session.states.PendingCardState;
 import atm.session.states.PinNumberState;
+import atm.session.states.ResultState;
 import atm.session.states.SessionState;
 import atm.session.transactions.ATMTransaction;
-import atm.ui.panels.MainPanel;
+import atm.ui.ATMDisplay;
 import atm.utils.CashValidator;
 import bank.transactions.utils.AccountType;
+import bank.transactions.utils.Money;
 import bank.transactions.utils.TransactionResult;
 import bank.transactions.utils.TransactionType;
 
 public class Session {
-	private MainPanel mainPanel;
+	private ATMDisplay mainPanel;
 	private MessageDispatcher dispatcher;
 	private SessionState state;
 	private String card;
-	private char[] pin;
+	// The bank verified the PIN once, later requests carry its session token instead. The PIN itself is not kept,
+	// an expired token sends the customer back to PIN entry
+	private volatile String sessionToken;
 	private ATMTransaction transaction;
 	private int allegedAmount; 
 	TransactionResult result;
+	// Where an async result is handed back, the Swing event thread unless told otherwise
+	private Executor callbackExecutor;
 
 
 
-	public Session(MainPanel mainPanel, MessageDispatcher dispatcher) {
+	public Session(ATMDisplay mainPanel, MessageDispatcher dispatcher) {
+		this(mainPanel, dispatcher, SwingUtilities::invokeLater);
+	}
+
+	public Session(ATMDisplay mainPanel, MessageDispatcher dispatcher, Executor callbackExecutor) {
 		super();
 		this.mainPanel = mainPanel;
 		this.dispatcher = dispatcher;
+		this.callbackExecutor = callbackExecutor;
 		state = new PendingCardState();
 	}
 
@@ -35,7 +52,7 @@ public class Session {
 		this.state = state;
 	}
 	
-	public MainPanel getMainPanel() {
+	public ATMDisplay getMainPanel() {
 		return mainPanel;
 	}
 
@@ -53,8 +70,8 @@ public class Session {
 		return card;
 	}
 
-	public void addPin(char[] pin) {
-		this.pin = pin;
+	public void addSessionToken(String sessionToken) {
+		this.sessionToken = sessionToken;
 		state.perform(this);
 	}
 
@@ -88,9 +105,9 @@ public class Session {
 			if (!CashValidator.validateWithdrawal(amount)) {
 				throw new InvalidAmountException();
 			}
-			transaction.setAmount(amount);
+			transaction.setAmount(Money.ofWhole(amount));
 		} else {
-			transaction.setAmount(amount);
+			transaction.setAmount(Money.ofWhole(amount));
 		}
 		
 		state.perform(this);
@@ -99,7 +116,7 @@ public class Session {
 
 	public void getCash(int amount) throws InvalidAmountException {
 		if (allegedAmount == amount)
-			transaction.setAmount(amount);
+			transaction.setAmount(Money.ofWhole(amount));
 		else
 			throw new InvalidAmountException();
 		
@@ -107,7 +124,43 @@ public class Session {
 	}
 	
 	public void performTransaction() {
-		result = transaction.perform(card, pin, dispatcher);
+		if (dispatcher instanceof AsyncMessageDispatcher) {
+			AsyncMessageDispatcher async = (AsyncMessageDispatcher) dispatcher;
+			// The UI thread returns right away, the session advances when the bank answers
+			transaction.performAsync(card, sessionToken, async)
+					.whenComplete((result, error) -> callbackExecutor.execute(() -> completeTransaction(result, error)));
+		} else {
+			completeTransaction(transaction.perform(card, sessionToken, dispatcher), null);
+		}
+	}
+
+	// A refused token has expired or was revoked, the transaction was not performed
+	private static boolean tokenExpired(TransactionResult result) {
+		return result != null && !result.isSuccessful() && "Invalid credentials.".equals(result.getReason());
+	}
+
+	private void completeTransaction(TransactionResult result, Throwable error) {
+		if (error == null && tokenExpired(result)) {
+			// Back to PIN entry, the customer chooses the transaction again once a new token is issued
+			sessionToken = null;
+			this.result = result;
+			state = new CardNumberState();
+			state.perform(this);
+			return;
+		}
+		if (error != null || result == null) {
+			System.out.println("Transaction failed: " + (error == null ? "no answer from the bank" : error.getMessage()));
+			result = new TransactionResult(false, "The bank could not be reached.", 0, null);
+		}
+		this.result = result;
+		mainPanel.setResult(createResultText());
+		mainPanel.changeLayout("Result");
+		state = new ResultState();
+	}
+
+	// Null until the bank answered the current transaction
+	public TransactionResult getResult() {
+		return result;
 	}
 
 	public void newTransaction() {
@@ -146,8 +199,8 @@ public class Session {
 		resultString.append("\tTransaction Outcome: \n");
 		if (result.isSuccessful()) {
 			resultString.append("Successful");
-			resultString.append("\tAmount "+ actionVerb +": " + transaction.getAmount() + "\n");
-			resultString.append("\t"+ moneyVerb + ": " + result.getFees() + "\n");
+			resultString.append("\tAmount "+ actionVerb +": " + Money.format(transaction.getAmount()) + "\n");
+			resultString.append("\t"+ moneyVerb + ": " + Money.format(result.getFees()) + "\n");
 		} else {
 			resultString.append("Unsuccessful\n");
 			resultString.append("\t\tReason: " + result.getReason() + "\n");
@@ -155,17 +208,20 @@ public class Session {
 		
 		resultString.append("----------------------------------------------------------\n");
 		resultString.append("New Balances:\n");
-		if (transactionType == TransactionType.Withdrawal) {
+		if (result.getAccountBalances() == null) {
+			// A failed transaction may come back without balances
+			resultString.append("\tUnavailable\n");
+		} else if (transactionType == TransactionType.Withdrawal) {
 			resultString.append("\t" + transaction.getFromAccount().toString() 
-					+ " => " + result.getAccountBalances()[0] + "\n");
+					+ " => " + Money.format(result.getAccountBalances()[0]) + "\n");
 		} else if (transactionType == TransactionType.Deposit) {
 			resultString.append("\t" + transaction.getToAccount().toString() 
-					+ " => " + result.getAccountBalances()[0] + "\n");
+					+ " => " + Money.format(result.getAccountBalances()[0]) + "\n");
 		} else if (transactionType == TransactionType.Transfer) {
 			resultString.append("\t" + transaction.getFromAccount().toString() 
-					+ " => " + result.getAccountBalances()[0] + "\n");
+					+ " => " + Money.format(result.getAccountBalances()[0]) + "\n");
 			resultString.append("\t" + transaction.getToAccount().toString() 
-					+ " => " + result.getAccountBalances()[1] + "\n");
+					+ " => " + Money.format(result.getAccountBalances()[1]) + "\n");
 		}
 		
 		return resultString.toString();
@@ -10,10 +10,9 @@ public class AmountState implements SessionState {
 			session.getMainPanel().changeLayout("InsertMoney");
 			session.setState(new InsertMoneyState());
 		} else {
+			// The session shows the result and moves to ResultState once the bank answers
+			session.setState(new ProcessingState());
 			session.performTransaction();
-			session.getMainPanel().setResult(session.createResultText());
-			session.getMainPanel().changeLayout("Result");
-			session.setState(new ResultState());
 		}
 	}
 
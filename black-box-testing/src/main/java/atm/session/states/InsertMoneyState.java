@@ -5,10 +5,9 @@ import atm.session.Session;
 public class InsertMoneyState implements SessionState {
 
 	public void perform(Session session) {
+		// The session shows the result and moves to ResultState once the bank answers
+		session.setState(new ProcessingState());
 		session.performTransaction();
-		session.getMainPanel().setResult(session.createResultText());
-		session.getMainPanel().changeLayout("Result");
-		session.setState(new ResultState());
 	}
 
 }
@@ -0,0 +1,11 @@
+package atm.session.states;
+
+import atm.session.Session;
+
+public class ProcessingState implements SessionState {
+
+	public void perform(Session session) {
+		// Waiting on the bank, input is ignored until the result is shown
+	}
+
+}
@@ -1,6 +1,9 @@
 package atm.session.transactions;
 
+import java.util.concurrent.CompletableFuture;
+
 import atm.ATM;
+import atm.dispatcher.AsyncMessageDispatcher;
 import atm.dispatcher.MessageDispatcher;
 import bank.transactions.utils.AccountType;
 import bank.transactions.utils.TransactionResult;
@@ -10,7 +13,8 @@ abstract public class ATMTransaction {
 	protected TransactionType type;
 	protected AccountType from;
 	protected AccountType to;
-	protected double amount;
+	// In cents
+	protected long amount;
 	
 	public ATMTransaction(TransactionType type) {
 		this.type = type;
@@ -32,7 +36,7 @@ abstract public class ATMTransaction {
 	}
 
 
-	public void setAmount(double amount) {
+	public void setAmount(long amount) {
 		this.amount = amount;
 	}
 
@@ -46,12 +50,17 @@ abstract public class ATMTransaction {
 	}
 
 
-	public double getAmount() {
+	public long getAmount() {
 		return amount;
 	}
 
-	public TransactionResult perform(String cardNumber, char[] pin, MessageDispatcher dispatcher) {
-		TransactionResult result = dispatcher.performTransaction(cardNumber, pin, this);
+	public TransactionResult perform(String cardNumber, String sessionToken, MessageDispatcher dispatcher) {
+		TransactionResult result = dispatcher.performTransaction(cardNumber, sessionToken, this);
 		return result;
 	}
+
+	public CompletableFuture<TransactionResult> performAsync(String cardNumber, String sessionToken,
+			AsyncMessageDispatcher dispatcher) {
+		return dispatcher.performTransactionAsync(cardNumber, sessionToken, this);
+	}
 }
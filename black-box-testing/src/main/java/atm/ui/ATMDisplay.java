@@ -0,0 +1,7 @@
+package atm.ui;
+
+// What a session shows, the Swing MainPanel or a HeadlessDisplay when no screen is attached
+public interface ATMDisplay {
+	public void changeLayout(String layout);
+	public void setResult(String resultText);
+}
@@ -0,0 +1,69 @@
+package atm.ui;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Keeps the layout a MainPanel would show, so a session can run without Swing
+public class HeadlessDisplay implements ATMDisplay {
+	// A lock rather than synchronized, a virtual thread waiting on it does not hold its carrier
+	private ReentrantLock lock = new ReentrantLock();
+	private Condition changed = lock.newCondition();
+	private String layout = "InsertCard";
+	private String resultText;
+
+	@Override
+	public void changeLayout(String layout) {
+		lock.lock();
+		try {
+			this.layout = layout;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void setResult(String resultText) {
+		lock.lock();
+		try {
+			this.resultText = resultText;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public String getLayout() {
+		lock.lock();
+		try {
+			return layout;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public String getResult() {
+		lock.lock();
+		try {
+			return resultText;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// False when the layout was not shown in time
+	public boolean awaitLayout(String layout, long timeoutMillis) throws InterruptedException {
+		long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		lock.lock();
+		try {
+			while (!layout.equals(this.layout)) {
+				if (remaining <= 0)
+					return false;
+				remaining = changed.awaitNanos(remaining);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
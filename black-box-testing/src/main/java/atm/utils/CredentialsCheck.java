@@ -11,11 +11,12 @@ public class CredentialsCheck {
 		this.dispatcher = dispatcher;
 	}
 
-	public void perform(String card, char[] pin) throws InvalidCredentialsException {
-		boolean credentialsCorrect = dispatcher.checkCredentials(card, pin);
-		
-		if (!credentialsCorrect)
+	// Returns the session token the bank issued for the card and PIN, one round trip
+	public String perform(String card, char[] pin) throws InvalidCredentialsException {
+		String sessionToken = dispatcher.login(card, pin);
+		if (sessionToken == null)
 			throw new InvalidCredentialsException();
+		return sessionToken;
 	}
 
 }
@@ -0,0 +1,128 @@
+package bank;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounds the work each endpoint may have in flight, so an overloaded bank answers 503 right away instead of
+// letting every request wait until the ATMs time out
+public class AdmissionControl {
+	public static final String CHECK_CREDENTIALS = "checkCredentials";
+	public static final String PERFORM_TRANSACTION = "performTransaction";
+	public static final String PERFORM_TRANSACTIONS = "performTransactions";
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 256;
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 200;
+	public static final int DEFAULT_RETRY_AFTER_SECONDS = 1;
+	private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
+	// Set while an exchange runs on the HttpServer dispatcher because the worker queue was full
+	private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+
+	private Map<String, Limiter> limiters;
+	private int queueCapacity;
+	private long maxWaitMillis;
+	private int retryAfterSeconds;
+	private LongAdder shed;
+
+	public AdmissionControl() {
+		this(DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_WAIT_MILLIS, DEFAULT_RETRY_AFTER_SECONDS);
+	}
+
+	public AdmissionControl(int queueCapacity, long maxWaitMillis, int retryAfterSeconds) {
+		super();
+		this.queueCapacity = queueCapacity;
+		this.maxWaitMillis = maxWaitMillis;
+		this.retryAfterSeconds = retryAfterSeconds;
+		this.shed = new LongAdder();
+		this.limiters = new HashMap<>();
+		// Logins are cheap and keep their own capacity, so a flood of transactions cannot lock ATMs out
+		setLimit(CHECK_CREDENTIALS, CPUS, 16);
+		setLimit(PERFORM_TRANSACTION, CPUS * 2, 32);
+		setLimit(PERFORM_TRANSACTIONS, CPUS, 8);
+	}
+
+	public static AdmissionControl fromSystemProperties() {
+		// -Dbank.queueCapacity, -Dbank.maxWaitMillis and -Dbank.retryAfter
+		return new AdmissionControl(Integer.getInteger("bank.queueCapacity", DEFAULT_QUEUE_CAPACITY),
+				Long.getLong("bank.maxWaitMillis", DEFAULT_MAX_WAIT_MILLIS),
+				Integer.getInteger("bank.retryAfter", DEFAULT_RETRY_AFTER_SECONDS));
+	}
+
+	// Call before the server starts
+	public void setLimit(String endpoint, int maxConcurrent, int maxQueued) {
+		limiters.put(endpoint, new Limiter(maxConcurrent, maxQueued));
+	}
+
+	// False when the request has to be shed, otherwise exit must follow
+	public boolean tryEnter(String endpoint) {
+		Limiter limiter = limiters.get(endpoint);
+		if (Boolean.TRUE.equals(SHEDDING.get()) || (limiter != null && !limiter.tryEnter(maxWaitMillis))) {
+			shed.increment();
+			return false;
+		}
+		return true;
+	}
+
+	public void exit(String endpoint) {
+		Limiter limiter = limiters.get(endpoint);
+		if (limiter != null)
+			limiter.permits.release();
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+	public long getShedCount() {
+		return shed.sum();
+	}
+
+	// Runs an exchange that found the worker queue full, it is only parsed and answered with 503
+	void runShed(Runnable exchange) {
+		SHEDDING.set(Boolean.TRUE);
+		try {
+			exchange.run();
+		} finally {
+			SHEDDING.remove();
+		}
+	}
+
+	private static class Limiter {
+		private Semaphore permits;
+		private AtomicInteger waiting;
+		private int maxQueued;
+
+		public Limiter(int maxConcurrent, int maxQueued) {
+			this.permits = new Semaphore(maxConcurrent);
+			this.waiting = new AtomicInteger();
+			this.maxQueued = maxQueued;
+		}
+
+		public boolean tryEnter(long maxWaitMillis) {
+			if (permits.tryAcquire())
+				return true;
+			// Only a bounded number of requests wait, and only for a bounded time, a waiting request holds a
+			// worker thread
+			if (waiting.incrementAndGet() > maxQueued) {
+				waiting.decrementAndGet();
+				return false;
+			}
+			try {
+				return permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} finally {
+				waiting.decrementAndGet();
+			}
+		}
+	}
+}
@@ -1,12 +1,26 @@
 package bank;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
+import bank.db.CardContext;
 import bank.db.DBHandler;
+import bank.db.ShardedDBHandler;
+import bank.db.UnitOfWork;
+import bank.exceptions.BalanceConflictException;
 import bank.exceptions.CardNotFoundException;
-import bank.exceptions.UserNotFoundException;
+import bank.exceptions.UnsuccessfulBalanceUpdate;
+import bank.journal.TransactionJournal;
+import bank.metrics.LatencyHistogram;
+import bank.metrics.MetricsRegistry;
 import bank.transactions.BankDeposit;
 import bank.transactions.BankTransaction;
 import bank.transactions.BankTransfer;
@@ -16,51 +30,296 @@ import bank.transactions.utils.TransactionData;
 import bank.transactions.utils.TransactionResult;
 import bank.transactions.utils.TransactionType;
 import bank.utils.FeesCalculator;
+import bank.utils.SessionTokens;
 
 public class BankFacade {
-	private DBHandler dbHandler;
+	// Optimistic units that lost a race read the balances again, a conflict is rare unless the account is hot
+	private static final int MAX_CONFLICT_ATTEMPTS = 4;
+	
+	private ShardedDBHandler storage;
 	private Map<TransactionType, BankTransaction> transactions;
+	private TransactionJournal journal;
+	private SessionTokens sessionTokens;
+	private Map<TransactionType, TypeMetrics> typeMetrics;
+	private TypeMetrics unknownTypeMetrics;
+	private volatile TransactionSequencer sequencer;
 
 	public BankFacade(DBHandler dbHandler, BankTransaction withdrawal, BankTransaction deposit,
 			BankTransaction transfer) {
+		this(new ShardedDBHandler(dbHandler), withdrawal, deposit, transfer);
+	}
+
+	public BankFacade(ShardedDBHandler storage, BankTransaction withdrawal, BankTransaction deposit,
+			BankTransaction transfer) {
 		super();
-		this.dbHandler = dbHandler;
+		this.storage = storage;
+		this.sessionTokens = new SessionTokens();
 		
 		transactions = new HashMap<>();
 		transactions.put(TransactionType.Withdrawal, withdrawal);
 		transactions.put(TransactionType.Deposit, deposit);
 		transactions.put(TransactionType.Transfer, transfer);
+		
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		typeMetrics = new EnumMap<>(TransactionType.class);
+		for (TransactionType type : TransactionType.values())
+			typeMetrics.put(type, new TypeMetrics(metrics, type.name()));
+		unknownTypeMetrics = new TypeMetrics(metrics, "unknown");
+	}
+
+	public ShardedDBHandler getStorage() {
+		return storage;
+	}
+
+	public void setJournal(TransactionJournal journal) {
+		this.journal = journal;
+	}
+
+	public void setSessionTokens(SessionTokens sessionTokens) {
+		this.sessionTokens = sessionTokens;
+	}
+
+	// Every transaction then goes through one business thread, which must never wait on SQLite
+	public synchronized void enableSequencer(int ringSize) {
+		if (!storage.isLedgerEnabled())
+			throw new IllegalStateException("The sequencer needs the ledger enabled on every shard");
+		if (sequencer != null)
+			return;
+		TransactionSequencer started = new TransactionSequencer(this, storage, ringSize);
+		started.start();
+		sequencer = started;
 	}
 
-	public boolean checkCredentials(String cardNumber, char[] inputPIN) {
-		String user;
-		char[] pin;
+	public synchronized void disableSequencer() {
+		TransactionSequencer stopped = sequencer;
+		if (stopped == null)
+			return;
+		sequencer = null;
+		stopped.stop();
+	}
+
+	public boolean isSequencerEnabled() {
+		return sequencer != null;
+	}
+
+	// Returns a session token for the card, or null when the credentials are wrong
+	public String checkCredentials(String cardNumber, char[] inputPIN) {
+		CardContext context;
 		try {
-			user = dbHandler.getCardOwner(cardNumber);
+			context = storage.forCard(cardNumber).loadCardContext(cardNumber);
 		} catch (CardNotFoundException e) {
-			return false;
-		}
-		try {
-			pin = dbHandler.getPIN(user);
-		} catch (UserNotFoundException e) {
-			return false;
+			return null;
 		}
 		
-		return Arrays.equals(pin, inputPIN);
+		if (!context.pinMatches(inputPIN))
+			return null;
+		return sessionTokens.issue(cardNumber);
 	}
 	
 	public TransactionResult performTransaction(TransactionData data) {
-		char[] pin = data.getPin();
-		TransactionResult result;
-		TransactionType transactionType = data.getType();
-		String cardNumber = data.getCardNumber();
-		if (checkCredentials(cardNumber, pin)) {
-			result = transactions.get(transactionType).perform(data);
+		return performTransactions(Collections.singletonList(data)).get(0);
+	}
+	
+	public List<TransactionResult> performTransactions(List<TransactionData> batch) {
+		TransactionResult[] results = new TransactionResult[batch.size()];
+		
+		// A card's entries all touch its owner's accounts, so each card gets one storage transaction
+		Map<String, List<Integer>> groups = new LinkedHashMap<>();
+		for (int i = 0; i < batch.size(); i++) {
+			TransactionData data = batch.get(i);
+			String sessionToken = data.getSessionToken();
+			// A session token is checked in memory, only callers without one are checked against the PIN
+			if (data.getCardNumber() == null
+					|| (sessionToken != null && !sessionTokens.isValid(sessionToken, data.getCardNumber()))) {
+				results[i] = invalidCredentials();
+				continue;
+			}
+			// Fails the entry alone, the transaction classes would throw out of the whole batch
+			if (!data.isComplete()) {
+				results[i] = new TransactionResult(false, "Invalid transaction.", 0, null);
+				continue;
+			}
+			groups.computeIfAbsent(data.getCardNumber(), card -> new ArrayList<>()).add(i);
+		}
+		
+		long[] elapsed = new long[results.length];
+		TransactionSequencer current = sequencer;
+		if (current != null) {
+			List<Integer> entries = new ArrayList<>();
+			for (List<Integer> group : groups.values())
+				entries.addAll(group);
+			long start = System.nanoTime();
+			// The whole batch waits for the checkpoint that covers its last entry
+			current.performAll(batch, entries, results);
+			long took = System.nanoTime() - start;
+			for (int index : entries)
+				elapsed[index] = took;
 		} else {
-			result = new TransactionResult(false, "Invalid credentials.", 0.0, null);
+			for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+				long start = System.nanoTime();
+				performGroup(group.getKey(), group.getValue(), batch, results);
+				// Every entry of a group waits for the group's commit
+				long took = System.nanoTime() - start;
+				for (int index : group.getValue())
+					elapsed[index] = took;
+			}
 		}
 		
-		return result;
+		for (int i = 0; i < results.length; i++) {
+			TransactionType type = batch.get(i).getType();
+			TypeMetrics metrics = type == null ? unknownTypeMetrics : typeMetrics.get(type);
+			metrics.record(results[i].isSuccessful(), elapsed[i]);
+		}
+		return Arrays.asList(results);
+	}
+	
+	// Called by the sequencer's business thread only, one entry at a time
+	void performSequenced(List<TransactionData> batch, int index, TransactionResult[] results) {
+		performGroup(batch.get(index).getCardNumber(), Collections.singletonList(index), batch, results);
+	}
+	
+	private void performGroup(String cardNumber, List<Integer> entries, List<TransactionData> batch,
+			TransactionResult[] results) {
+		// Every account of a card owner is on the same shard
+		DBHandler dbHandler;
+		try {
+			dbHandler = storage.forCard(cardNumber);
+		} catch (CardNotFoundException e) {
+			for (int index : entries)
+				results[index] = invalidCredentials();
+			return;
+		}
+		
+		for (int attempt = 1; ; attempt++) {
+			try {
+				performGroup(dbHandler, cardNumber, entries, batch, results);
+				return;
+			} catch (BalanceConflictException e) {
+				// The lost attempt was aborted with its journal records, only a committed attempt is journaled
+				if (attempt >= MAX_CONFLICT_ATTEMPTS) {
+					// Nothing was committed, entries that had succeeded now fail
+					List<Integer> performed = new ArrayList<>();
+					for (int index : entries) {
+						if (results[index] != null && results[index].isSuccessful())
+							performed.add(index);
+					}
+					failGroup(entries, performed, results);
+					return;
+				}
+				for (int index : entries)
+					results[index] = null;
+			}
+		}
+	}
+	
+	private void performGroup(DBHandler dbHandler, String cardNumber, List<Integer> entries,
+			List<TransactionData> batch, TransactionResult[] results) throws BalanceConflictException {
+		// Read, fee computation and writes of the whole group happen in one storage transaction
+		List<Integer> performed = new ArrayList<>();
+		try (UnitOfWork unit = dbHandler.begin()) {
+			// A retried key gets the result of its first attempt, the claims are taken before the unit locks
+			TransactionResult[] replays = new TransactionResult[entries.size()];
+			for (int i = 0; i < entries.size(); i++) {
+				String key = batch.get(entries.get(i)).getIdempotencyKey();
+				if (key != null)
+					replays[i] = unit.claimResult(cardNumber, key);
+			}
+			
+			// Owner, PIN, student flag and balances come back in a single query, the accounts the group touches
+			// stay locked against other units until it commits
+			CardContext context;
+			try {
+				context = unit.loadCardContext(cardNumber, touchedAccounts(entries, batch));
+			} catch (CardNotFoundException e) {
+				for (int index : entries)
+					results[index] = invalidCredentials();
+				return;
+			}
+			
+			for (int i = 0; i < entries.size(); i++) {
+				int index = entries.get(i);
+				TransactionData data = batch.get(index);
+				if (data.getSessionToken() == null && !context.pinMatches(data.getPin())) {
+					results[index] = invalidCredentials();
+					continue;
+				}
+				if (replays[i] != null) {
+					results[index] = replays[i];
+					continue;
+				}
+				
+				int writes = unit.getWriteCount();
+				TransactionResult result = transactions.get(data.getType()).perform(data, context);
+				results[index] = result;
+				if (result.isSuccessful()) {
+					performed.add(index);
+					if (data.getIdempotencyKey() != null)
+						unit.recordResult(cardNumber, data.getIdempotencyKey(), result);
+					// Written once the unit commits, while the unit still holds the accounts
+					if (journal != null)
+						unit.journal(journal, data, context.getUsername(), result);
+				} else if (unit.getWriteCount() != writes) {
+					// A half applied entry cannot be committed with the rest of the group
+					failGroup(entries, performed, results);
+					return;
+				}
+			}
+			if (!performed.isEmpty())
+				unit.commit();
+		} catch (BalanceConflictException e) {
+			throw e;
+		} catch (UnsuccessfulBalanceUpdate e) {
+			failGroup(entries, performed, results);
+		}
+	}
+	
+	private static AccountType[] touchedAccounts(List<Integer> entries, List<TransactionData> batch) {
+		EnumSet<AccountType> touched = EnumSet.noneOf(AccountType.class);
+		for (int index : entries) {
+			AccountType[] accounts = batch.get(index).getAccounts();
+			if (accounts == null)
+				continue;
+			for (AccountType account : accounts) {
+				if (account != null)
+					touched.add(account);
+			}
+		}
+		return touched.toArray(new AccountType[0]);
+	}
+	
+	private static void failGroup(List<Integer> entries, List<Integer> performed, TransactionResult[] results) {
+		// Entries that already failed on their own keep their reason
+		for (int index : entries) {
+			if (results[index] == null || performed.contains(index))
+				results[index] = new TransactionResult(false, "Unsuccessful update of account balance.", 0, null);
+		}
+	}
+	
+	private static TransactionResult invalidCredentials() {
+		return new TransactionResult(false, "Invalid credentials.", 0, null);
+	}
+	
+	private static class TypeMetrics {
+		private LongAdder transactions;
+		private LongAdder failures;
+		private LatencyHistogram latency;
+		
+		public TypeMetrics(MetricsRegistry metrics, String type) {
+			transactions = metrics.counter("bank_transactions_total", "Transactions performed per type.", "type", type);
+			failures = metrics.counter("bank_transaction_failures_total", "Transactions refused or failed per type.",
+					"type", type);
+			latency = metrics.histogram("bank_transaction_seconds", "Time to perform and commit per type.", "type",
+					type);
+		}
+		
+		public void record(boolean successful, long nanos) {
+			transactions.increment();
+			if (!successful)
+				failures.increment();
+			// Entries refused before they reach the storage have nothing to time
+			if (nanos > 0)
+				latency.record(nanos);
+		}
 	}
 
 }
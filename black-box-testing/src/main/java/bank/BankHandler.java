@@ -1,53 +1,62 @@
 package bank;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
-import java.lang.reflect.Type;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
-import com.google.gson.reflect.TypeToken;
 import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 
 import bank.exceptions.WrongOperationException;
+import bank.json.Credentials;
+import bank.json.JsonCodec;
+import bank.metrics.LatencyHistogram;
+import bank.metrics.MetricsRegistry;
 import bank.transactions.utils.TransactionData;
 import bank.transactions.utils.TransactionResult;
 
 public class BankHandler {
-	private Gson gson;
+	private JsonCodec codec;
 	private BankFacade facade;
-	
+	private AdmissionControl admission;
+	private MetricsRegistry metrics;
+	private Map<String, Instruments> instruments;
+
 	public BankHandler(BankFacade facade) {
-		this.gson = new Gson();
+		this(facade, new AdmissionControl());
+	}
+
+	public BankHandler(BankFacade facade, AdmissionControl admission) {
+		this(facade, admission, MetricsRegistry.getDefault());
+	}
+
+	public BankHandler(BankFacade facade, AdmissionControl admission, MetricsRegistry metrics) {
+		this.codec = new JsonCodec();
 		this.facade = facade;
+		this.admission = admission;
+		this.metrics = metrics;
+		this.instruments = new HashMap<>();
+		for (String endpoint : new String[] { AdmissionControl.CHECK_CREDENTIALS, AdmissionControl.PERFORM_TRANSACTION,
+				AdmissionControl.PERFORM_TRANSACTIONS }) {
+			instruments.put(endpoint, new Instruments(metrics, endpoint));
+		}
 	}
 
-	private String getRequestBody(HttpExchange exchange) throws WrongOperationException {
+	private InputStream getRequestBody(HttpExchange exchange) throws WrongOperationException {
 		Headers headers = exchange.getRequestHeaders();
-		String query = null;
 
 		if ((exchange.getRequestMethod().contentEquals("POST"))
-				&& ("application/json; utf-8".contentEquals(headers.get("Content-Type").get(0)))) {
-
-			InputStreamReader isr;
-			try {
-				isr = new InputStreamReader(exchange.getRequestBody(), "utf-8");
-				BufferedReader br = new BufferedReader(isr);
-				query = br.readLine();
-			} catch (UnsupportedEncodingException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-
-			return query;
+				&& ("application/json; utf-8".equals(headers.getFirst("Content-Type")))) {
+			// Parsed as it arrives, the body can span any number of lines
+			return exchange.getRequestBody();
 		} else {
 			throw new WrongOperationException();
 		}
@@ -65,75 +74,125 @@ public class BankHandler {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
-		
+
 	}
 
-	public void performTransaction(HttpExchange exchange) {
+	private void sendJson(HttpExchange exchange, JsonResponse response) {
+		// Chunked, the JSON is written straight to the response stream
+		try {
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream os = exchange.getResponseBody();
+			response.writeTo(os);
+			os.close();
+			exchange.close();
+		} catch (IOException e) {
+			System.out.println("Could not write the response: " + e.getMessage());
+			exchange.close();
+		}
+	}
 
-		int responseCode;
-		String response;
+	private void handle(HttpExchange exchange, String endpoint, JsonRequest request) {
+		Instruments endpointMetrics = instruments.get(endpoint);
+		long start = System.nanoTime();
+		try {
+			admit(exchange, endpoint, request);
+		} finally {
+			endpointMetrics.requests.increment();
+			// Shed, malformed and failed exchanges alike
+			if (exchange.getResponseCode() != 200)
+				endpointMetrics.errors.increment();
+			endpointMetrics.latency.record(System.nanoTime() - start);
+		}
+	}
 
-		String query;
+	private void admit(HttpExchange exchange, String endpoint, JsonRequest request) {
+		if (!admission.tryEnter(endpoint)) {
+			// Shed before the body is read, the client retries after the hint
+			exchange.getResponseHeaders().set("Retry-After", String.valueOf(admission.getRetryAfterSeconds()));
+			sendResponse(exchange, 503, "The bank is busy, try again later.");
+			return;
+		}
 		try {
-			query = getRequestBody(exchange);
+			InputStream body = getRequestBody(exchange);
 			try {
-			Type type = new TypeToken<TransactionData>() {}.getType();
-			TransactionData transactionData = gson.fromJson(query, type);
-			
-			// handle get request
-			TransactionResult result = facade.performTransaction(transactionData);
-			response = gson.toJson(result);
-
-			// prepare response
-			responseCode = 200;
+				sendJson(exchange, request.handle(body));
 			} catch (JsonSyntaxException jsonException) {
-				// prepare response
-				responseCode = 405;
-				response = "Incorrect JSON format.";
+				sendResponse(exchange, 405, "Incorrect JSON format.");
+			} catch (IOException e) {
+				System.out.println("Could not read the request: " + e.getMessage());
+				exchange.close();
 			}
 		} catch (WrongOperationException e) {
-			// prepare response
-			responseCode = 405;
-			response = "This type of get operation is not supported.";
+			sendResponse(exchange, 405, "This type of get operation is not supported.");
+		} finally {
+			admission.exit(endpoint);
 		}
-		
-		sendResponse(exchange, responseCode, response);
+	}
+
+	public void performTransaction(HttpExchange exchange) {
+		handle(exchange, AdmissionControl.PERFORM_TRANSACTION, body -> {
+			TransactionData transactionData = codec.readTransactionData(body);
+			TransactionResult result = facade.performTransaction(transactionData);
+			return os -> codec.writeTransactionResult(os, result);
+		});
+	}
 
+	public void performTransactions(HttpExchange exchange) {
+		handle(exchange, AdmissionControl.PERFORM_TRANSACTIONS, body -> {
+			List<TransactionData> batch = codec.readTransactionBatch(body);
+			// Results come back in the order of the batch
+			List<TransactionResult> results = facade.performTransactions(batch);
+			return os -> codec.writeTransactionResults(os, results);
+		});
 	}
-	
-	public void checkCredentials(HttpExchange exchange) {
 
-		int responseCode;
-		String response;
+	public void checkCredentials(HttpExchange exchange) {
+		handle(exchange, AdmissionControl.CHECK_CREDENTIALS, body -> {
+			Credentials credentials = codec.readCredentials(body);
+			if (credentials == null || credentials.getPin() == null)
+				throw new JsonSyntaxException("Missing credentials");
+			// The session token, or null when the credentials are wrong
+			String sessionToken = facade.checkCredentials(credentials.getCardNumber(), credentials.getPin());
+			return os -> codec.writeSessionToken(os, sessionToken);
+		});
+	}
 
-		String query;
+	public void metrics(HttpExchange exchange) {
+		// Prometheus text format, written straight to the response stream
 		try {
-			query = getRequestBody(exchange);
-			try {
-			Type type = new TypeToken<Map<String, String>>() {}.getType();
-			Map<String, String> credentials = gson.fromJson(query, type);
-			
-			// handle get request
-			String cardNumber = credentials.get("cardNumber");
-			char[] pin = credentials.get("pin").toCharArray();
-			boolean result = facade.checkCredentials(cardNumber, pin);
-			response = gson.toJson(result);
-
-			// prepare response
-			responseCode = 200;
-			} catch (JsonSyntaxException jsonException) {
-				// prepare response
-				responseCode = 405;
-				response = "Incorrect JSON format.";
-			}
-		} catch (WrongOperationException e) {
-			// prepare response
-			responseCode = 405;
-			response = "This type of get operation is not supported.";
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, 0);
+			Writer writer = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+			metrics.writePrometheus(writer);
+			writer.close();
+			exchange.close();
+		} catch (IOException e) {
+			System.out.println("Could not write the metrics: " + e.getMessage());
+			exchange.close();
 		}
-		
-		sendResponse(exchange, responseCode, response);
+	}
+
+	private static class Instruments {
+		private LongAdder requests;
+		private LongAdder errors;
+		private LatencyHistogram latency;
+
+		public Instruments(MetricsRegistry metrics, String endpoint) {
+			requests = metrics.counter("bank_http_requests_total", "Requests received per endpoint.", "endpoint",
+					endpoint);
+			errors = metrics.counter("bank_http_errors_total", "Requests not answered with 200 per endpoint.",
+					"endpoint", endpoint);
+			latency = metrics.histogram("bank_http_request_seconds", "Time from dispatch to response per endpoint.",
+					"endpoint", endpoint);
+		}
+	}
+
+	private interface JsonRequest {
+		JsonResponse handle(InputStream body) throws IOException;
+	}
 
+	private interface JsonResponse {
+		void writeTo(OutputStream os) throws IOException;
 	}
 
 }
@@ -1,11 +1,22 @@
 package bank;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.sun.net.httpserver.HttpServer;
 
 import bank.db.DBHandler;
+import bank.db.ShardedDBHandler;
+import bank.journal.TransactionJournal;
 import bank.transactions.BankDeposit;
 import bank.transactions.BankTransaction;
 import bank.transactions.BankTransfer;
@@ -14,38 +25,174 @@ import bank.utils.FeesCalculator;
 
 public class BankServer {
 	private BankHandler handler;
+	private BankServerConfig config;
+	private AdmissionControl admission;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	static {
+		// The JDK server writes headers and body separately, without TCP_NODELAY each response waits on a delayed ACK
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
 	
 	public BankServer(BankFacade facade) {
+		this(facade, new BankServerConfig());
+	}
+
+	public BankServer(BankFacade facade, BankServerConfig config) {
+		this(facade, config, new AdmissionControl());
+	}
+
+	public BankServer(BankFacade facade, BankServerConfig config, AdmissionControl admission) {
 		super();
-		this.handler = new BankHandler(facade);
+		this.handler = new BankHandler(facade, admission);
+		this.config = config;
+		this.admission = admission;
 	}
 
 	public void start() {
-		int port = 9000;
-		HttpServer server;
 		try {
-			server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
-			System.out.println("server started at " + server.getAddress());
+			server = HttpServer.create(new InetSocketAddress(config.getHost(), config.getPort()), config.getBacklog());
 			server.createContext("/performTransaction", handler::performTransaction);
+			server.createContext("/performTransactions", handler::performTransactions);
 			server.createContext("/checkCredentials", handler::checkCredentials);
-			server.setExecutor(null);
+			server.createContext("/metrics", handler::metrics);
+			executor = createExecutor();
+			server.setExecutor(executor);
 			server.start();
+			System.out.println("server started at " + server.getAddress() + " (" + config.getExecutionMode() + ")");
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 	}
 
+	public InetSocketAddress getAddress() {
+		return server == null ? null : server.getAddress();
+	}
+
+	public void stop(int delaySeconds) {
+		if (server != null)
+			server.stop(delaySeconds);
+		if (executor != null)
+			executor.shutdown();
+		server = null;
+		executor = null;
+	}
+
+	private ExecutorService createExecutor() {
+		switch (config.getExecutionMode()) {
+		case VIRTUAL_THREADS:
+			try {
+				// Looked up at runtime, the sources target Java 11
+				Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService) factory.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				System.out.println("Virtual threads are not available, using " + config.getPoolSize()
+						+ " platform threads");
+				return createPool(config.getPoolSize());
+			}
+		case PLATFORM_POOL:
+			return createPool(config.getPoolSize());
+		default:
+			// Run inline, the dispatcher could not accept, let alone shed, while an exchange is in progress and
+			// the admission limits would never fill. One worker keeps requests serial and the dispatcher free
+			return createPool(1);
+		}
+	}
+
+	private ExecutorService createPool(int threads) {
+		AtomicInteger count = new AtomicInteger();
+		// A bounded queue, once it is full the dispatcher thread answers the exchange with 503 itself
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(admission.getQueueCapacity()), runnable -> {
+					Thread thread = new Thread(runnable, "bank-http-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, (exchange, pool) -> admission.runShed(exchange));
+	}
+
 	public static void main(String[] args) {
 		FeesCalculator feesCalculator = new FeesCalculator();
-		DBHandler dbHandler = new DBHandler();
-		BankTransaction withdrawal = new BankWithdrawal(feesCalculator, dbHandler);
-		BankTransaction deposit = new BankDeposit(feesCalculator, dbHandler);
-		BankTransaction transfer = new BankTransfer(feesCalculator, dbHandler);
-		BankFacade facade = new BankFacade(dbHandler, withdrawal, deposit, transfer);
-		BankServer server = new BankServer(facade);
+		BankTransaction withdrawal = new BankWithdrawal(feesCalculator);
+		BankTransaction deposit = new BankDeposit(feesCalculator);
+		BankTransaction transfer = new BankTransfer(feesCalculator);
+		BankFacade facade;
+		
+		int shardCount = Integer.getInteger("bank.shards", 1);
+		if (shardCount > 1) {
+			// Split bank.db on first start, afterwards the shard files are the source of truth
+			ShardedDBHandler storage = new ShardedDBHandler(ShardedDBHandler.DEFAULT_URL_PATTERN, shardCount,
+					DBHandler.DEFAULT_POOL_SIZE);
+			try {
+				if (storage.isEmpty())
+					storage.importFrom(DBHandler.DEFAULT_URL);
+			} catch (SQLException e) {
+				System.out.println("Shard import: " + e.getMessage());
+			}
+			storage.enableProfileCache(DBHandler.DEFAULT_PROFILE_CACHE_SIZE, DBHandler.DEFAULT_PROFILE_CACHE_TTL_MILLIS);
+			if (Boolean.getBoolean("bank.optimistic"))
+				storage.enableOptimisticUpdates();
+			facade = new BankFacade(storage, withdrawal, deposit, transfer);
+		} else {
+			DBHandler dbHandler = new DBHandler();
+			dbHandler.enableProfileCache(DBHandler.DEFAULT_PROFILE_CACHE_SIZE, DBHandler.DEFAULT_PROFILE_CACHE_TTL_MILLIS);
+			// -Dbank.optimistic=true when several bank processes share the database
+			if (Boolean.getBoolean("bank.optimistic"))
+				dbHandler.enableOptimisticUpdates();
+			facade = new BankFacade(dbHandler, withdrawal, deposit, transfer);
+		}
+		// -Dbank.sequencer=true applies every transaction on one thread against the ledger
+		if (Boolean.getBoolean("bank.sequencer")) {
+			try {
+				facade.getStorage().enableLedger(Long.getLong("bank.checkpointMillis", 1000));
+				facade.enableSequencer(Integer.getInteger("bank.ringSize", TransactionSequencer.DEFAULT_RING_SIZE));
+			} catch (SQLException e) {
+				System.out.println("Sequencer: " + e.getMessage());
+			}
+		}
+		// -Dbank.journal=<directory> keeps an audit trail of every committed transaction and replays it on start,
+		// restoring balances the last ledger checkpoint did not reach
+		String journalDirectory = System.getProperty("bank.journal");
+		if (journalDirectory != null) {
+			try {
+				TransactionJournal journal = new TransactionJournal(Paths.get(journalDirectory),
+						Integer.getInteger("bank.journalSegmentSize", TransactionJournal.DEFAULT_SEGMENT_SIZE),
+						Boolean.getBoolean("bank.journalForce"));
+				journal.replay(facade.getStorage());
+				facade.setJournal(journal);
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					try {
+						journal.close();
+					} catch (IOException e) {
+						System.out.println("Journal close: " + e.getMessage());
+					}
+				}, "bank-journal-close"));
+			} catch (IOException e) {
+				// Serving without the journal would leave transactions without an audit record
+				System.out.println("Journal: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		BankServerConfig config = BankServerConfig.fromSystemProperties();
+		BankServer server = new BankServer(facade, config, AdmissionControl.fromSystemProperties());
 		server.start();
 
+		// -Dbank.binaryPort also serves the binary protocol for BinaryDispatcher
+		Integer binaryPort = Integer.getInteger("bank.binaryPort");
+		if (binaryPort != null) {
+			BinaryServer binaryServer = new BinaryServer(facade, new InetSocketAddress(config.getHost(), binaryPort),
+					config.getBacklog());
+			try {
+				binaryServer.start();
+			} catch (IOException e) {
+				// The ATMs configured for the binary port could not reach the bank, do not run half started
+				server.stop(0);
+				System.exit(1);
+			}
+		}
+
 	}
 
 }
@@ -0,0 +1,64 @@
+package bank;
+
+public class BankServerConfig {
+	public static final String DEFAULT_HOST = "localhost";
+	public static final int DEFAULT_PORT = 9000;
+	public static final int DEFAULT_BACKLOG = 0;
+	public static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 4;
+
+	public enum ExecutionMode {
+		// One request at a time on a single worker, the HttpServer dispatcher thread accepts and sheds
+		DISPATCHER,
+		// A new virtual thread per exchange, needs Java 21
+		VIRTUAL_THREADS,
+		// A fixed pool of platform threads
+		PLATFORM_POOL
+	}
+
+	private String host;
+	private int port;
+	private int backlog;
+	private ExecutionMode executionMode;
+	private int poolSize;
+
+	public BankServerConfig() {
+		this(DEFAULT_HOST, DEFAULT_PORT, DEFAULT_BACKLOG, ExecutionMode.DISPATCHER, DEFAULT_POOL_SIZE);
+	}
+
+	public BankServerConfig(String host, int port, int backlog, ExecutionMode executionMode, int poolSize) {
+		super();
+		this.host = host;
+		this.port = port;
+		this.backlog = backlog;
+		this.executionMode = executionMode;
+		this.poolSize = poolSize;
+	}
+
+	public static BankServerConfig fromSystemProperties() {
+		// -Dbank.host, -Dbank.port, -Dbank.backlog, -Dbank.executor and -Dbank.poolSize
+		String mode = System.getProperty("bank.executor", ExecutionMode.DISPATCHER.name());
+		return new BankServerConfig(System.getProperty("bank.host", DEFAULT_HOST),
+				Integer.getInteger("bank.port", DEFAULT_PORT), Integer.getInteger("bank.backlog", DEFAULT_BACKLOG),
+				ExecutionMode.valueOf(mode.trim().toUpperCase()), Integer.getInteger("bank.poolSize", DEFAULT_POOL_SIZE));
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public int getBacklog() {
+		return backlog;
+	}
+
+	public ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+}
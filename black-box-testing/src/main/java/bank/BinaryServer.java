@@ -0,0 +1,201 @@
+package bank;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+import bank.exceptions.WireFormatException;
+import bank.json.Credentials;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+import bank.wire.WireCodec;
+
+// Serves the binary protocol of WireCodec on a plain TCP socket, next to the HTTP BankServer
+public class BinaryServer {
+	public static final int DEFAULT_PORT = 9001;
+
+	private BankFacade facade;
+	private InetSocketAddress address;
+	private int backlog;
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+	private Thread thread;
+	private volatile boolean running;
+
+	public BinaryServer(BankFacade facade) {
+		this(facade, new InetSocketAddress(BankServerConfig.DEFAULT_HOST, DEFAULT_PORT), BankServerConfig.DEFAULT_BACKLOG);
+	}
+
+	public BinaryServer(BankFacade facade, InetSocketAddress address, int backlog) {
+		super();
+		this.facade = facade;
+		this.address = address;
+		this.backlog = backlog;
+	}
+
+	// Throws when the address cannot be bound, nothing is left open
+	public void start() throws IOException {
+		try {
+			selector = Selector.open();
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(address, backlog);
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			System.out.println("binary server could not start at " + address + ": " + e.getMessage());
+			if (serverChannel != null)
+				serverChannel.close();
+			if (selector != null)
+				selector.close();
+			serverChannel = null;
+			selector = null;
+			throw e;
+		}
+		running = true;
+		thread = new Thread(this::run, "bank-binary-server");
+		thread.start();
+		System.out.println("binary server started at " + serverChannel.getLocalAddress());
+	}
+
+	public InetSocketAddress getAddress() {
+		try {
+			return serverChannel == null ? null : (InetSocketAddress) serverChannel.getLocalAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	public void stop() {
+		running = false;
+		if (selector != null)
+			selector.wakeup();
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		thread = null;
+		serverChannel = null;
+		selector = null;
+	}
+
+	private void run() {
+		try {
+			while (running) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid())
+						continue;
+					try {
+						if (key.isAcceptable())
+							accept();
+						else
+							service(key);
+					} catch (IOException | WireFormatException e) {
+						System.out.println("binary connection: " + e.getMessage());
+						close(key);
+					} catch (RuntimeException e) {
+						// Only the connection that sent the frame is dropped, the listener keeps serving the rest
+						System.out.println("binary connection: " + e);
+						close(key);
+					}
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("binary server: " + e.getMessage());
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				close(key);
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				System.out.println("binary server: " + e.getMessage());
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null)
+			return;
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		channel.register(selector, SelectionKey.OP_READ, new Connection());
+	}
+
+	private void service(SelectionKey key) throws IOException, WireFormatException {
+		SocketChannel channel = (SocketChannel) key.channel();
+		Connection connection = (Connection) key.attachment();
+
+		if (key.isReadable() && channel.read(connection.in) < 0) {
+			close(key);
+			return;
+		}
+
+		// Frames are handled in order, and only while the replies fit in the output buffer
+		ByteBuffer in = connection.in;
+		in.flip();
+		int length;
+		while (connection.out.remaining() >= WireCodec.MAX_FRAME && (length = WireCodec.frameLength(in)) >= 0) {
+			int limit = in.limit();
+			int end = in.position() + WireCodec.LENGTH_PREFIX + length;
+			in.limit(end);
+			handle(in, connection.out);
+			in.limit(limit).position(end);
+		}
+		in.compact();
+
+		ByteBuffer out = connection.out;
+		out.flip();
+		channel.write(out);
+		out.compact();
+		key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+
+	// The facade runs on the selector thread, one request at a time
+	private void handle(ByteBuffer in, ByteBuffer out) throws WireFormatException {
+		byte opcode = WireCodec.readOpcode(in);
+		switch (opcode) {
+		case WireCodec.CHECK_CREDENTIALS:
+			Credentials credentials = WireCodec.readCredentials(in);
+			if (credentials.getPin() == null)
+				throw new WireFormatException("Missing PIN");
+			WireCodec.writeSessionToken(out, facade.checkCredentials(credentials.getCardNumber(), credentials.getPin()));
+			break;
+		case WireCodec.PERFORM_TRANSACTION:
+			TransactionData data = WireCodec.readTransaction(in);
+			TransactionResult result = facade.performTransaction(data);
+			WireCodec.writeResult(out, result);
+			break;
+		default:
+			throw new WireFormatException("Unknown opcode " + opcode);
+		}
+	}
+
+	private static void close(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			System.out.println("binary connection: " + e.getMessage());
+		}
+	}
+
+	private static class Connection {
+		private ByteBuffer in = ByteBuffer.allocateDirect(WireCodec.MAX_FRAME);
+		// Room for a few replies while the client is slow to read
+		private ByteBuffer out = ByteBuffer.allocateDirect(WireCodec.MAX_FRAME * 4);
+	}
+}
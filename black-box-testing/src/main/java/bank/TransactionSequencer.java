@@ -0,0 +1,242 @@
+package bank;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import bank.db.ShardedDBHandler;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+
+// Request threads publish transactions into a preallocated ring, one business thread applies them in sequence
+// and a storage thread checkpoints each run of applied transactions before their callers are woken up.
+// Meant for the ledger, where applying a transaction never touches SQLite
+public class TransactionSequencer {
+	public static final int DEFAULT_RING_SIZE = 1 << 14;
+
+	private static final int SPINS = 1000;
+	private static final long IDLE_PARK_NANOS = 100000;
+	private static final int CHECKPOINT_ATTEMPTS = 5;
+	private static final long CHECKPOINT_BACKOFF_MILLIS = 20;
+
+	private BankFacade facade;
+	private ShardedDBHandler storage;
+	private Slot[] slots;
+	private int mask;
+	// Next sequence to claim, last sequence applied and last sequence made durable
+	private AtomicLong claimed;
+	private volatile long applied;
+	private volatile long stored;
+	private volatile boolean running;
+	// Set once a checkpoint kept failing, no transaction is applied or acknowledged afterwards
+	private volatile SQLException failure;
+	private volatile boolean businessIdle;
+	private volatile boolean storageIdle;
+	private Thread businessThread;
+	private Thread storageThread;
+
+	public TransactionSequencer(BankFacade facade, ShardedDBHandler storage, int ringSize) {
+		super();
+		if (ringSize < 2 || Integer.bitCount(ringSize) != 1)
+			throw new IllegalArgumentException("Ring size must be a power of two");
+		this.facade = facade;
+		this.storage = storage;
+		this.slots = new Slot[ringSize];
+		this.mask = ringSize - 1;
+		for (int i = 0; i < ringSize; i++)
+			slots[i] = new Slot(i);
+		this.claimed = new AtomicLong();
+		this.applied = -1;
+		this.stored = -1;
+	}
+
+	public void start() {
+		running = true;
+		businessThread = new Thread(this::applyLoop, "bank-sequencer-business");
+		storageThread = new Thread(this::storeLoop, "bank-sequencer-storage");
+		businessThread.setDaemon(true);
+		storageThread.setDaemon(true);
+		businessThread.start();
+		storageThread.start();
+	}
+
+	// Transactions already claimed are still applied and stored
+	public void stop() {
+		running = false;
+		LockSupport.unpark(businessThread);
+		LockSupport.unpark(storageThread);
+		try {
+			businessThread.join();
+			storageThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public long getSequence() {
+		return stored + 1;
+	}
+
+	public SQLException getFailure() {
+		return failure;
+	}
+
+	// Results land in results at the same indexes, in the order the entries were listed
+	public void performAll(List<TransactionData> batch, List<Integer> entries, TransactionResult[] results) {
+		if (entries.isEmpty())
+			return;
+		if (!running)
+			throw new IllegalStateException("Sequencer is stopped");
+		if (failure != null) {
+			for (int index : entries)
+				results[index] = notDurable();
+			return;
+		}
+
+		Waiter waiter = new Waiter(batch, results, entries.size());
+		for (int index : entries) {
+			long sequence = claimed.getAndIncrement();
+			Slot slot = slots[(int) sequence & mask];
+			// The slot is free once the storage thread is done with the transaction a full ring earlier
+			for (int spins = 0; slot.available != sequence; spins++)
+				idle(spins);
+			slot.waiter = waiter;
+			slot.index = index;
+			slot.published = sequence;
+			if (businessIdle)
+				LockSupport.unpark(businessThread);
+		}
+
+		for (int spins = 0; waiter.remaining.get() > 0; spins++) {
+			if (spins < SPINS)
+				Thread.onSpinWait();
+			else
+				LockSupport.park(this);
+		}
+	}
+
+	private void applyLoop() {
+		long sequence = 0;
+		while (running || sequence < claimed.get()) {
+			Slot slot = slots[(int) sequence & mask];
+			if (slot.published != sequence) {
+				waitForWork(true);
+				continue;
+			}
+			businessIdle = false;
+			// Every balance change happens on this thread, in sequence order
+			Waiter waiter = slot.waiter;
+			try {
+				if (failure == null)
+					facade.performSequenced(waiter.batch, slot.index, waiter.results);
+				else
+					waiter.results[slot.index] = notDurable();
+			} catch (RuntimeException e) {
+				System.out.println("Sequenced transaction: " + e.getMessage());
+				waiter.results[slot.index] = new TransactionResult(false, "Unsuccessful update of account balance.", 0,
+						null);
+			}
+			applied = sequence++;
+			if (storageIdle)
+				LockSupport.unpark(storageThread);
+		}
+	}
+
+	private void storeLoop() {
+		long next = 0;
+		while (running || next < claimed.get()) {
+			long end = applied;
+			if (end < next) {
+				waitForWork(false);
+				continue;
+			}
+			storageIdle = false;
+			// One checkpoint covers every transaction applied since the last one
+			boolean durable = failure == null && checkpoint();
+			for (long sequence = next; sequence <= end; sequence++) {
+				Slot slot = slots[(int) sequence & mask];
+				Waiter waiter = slot.waiter;
+				slot.waiter = null;
+				if (!durable)
+					waiter.results[slot.index] = notDurable();
+				slot.available = sequence + slots.length;
+				if (waiter.remaining.decrementAndGet() == 0)
+					LockSupport.unpark(waiter.thread);
+			}
+			stored = end;
+			next = end + 1;
+		}
+	}
+
+	// False once the attempts are used up, the sequencer then refuses all further work
+	private boolean checkpoint() {
+		SQLException last = null;
+		for (int attempt = 0; attempt < CHECKPOINT_ATTEMPTS; attempt++) {
+			try {
+				storage.checkpoint();
+				return true;
+			} catch (SQLException e) {
+				last = e;
+			}
+			try {
+				Thread.sleep(CHECKPOINT_BACKOFF_MILLIS << attempt);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		failure = last == null ? new SQLException("Checkpoint interrupted") : last;
+		return false;
+	}
+
+	// The balances may still reach SQLite with a later checkpoint, the caller cannot count on either outcome
+	private static TransactionResult notDurable() {
+		return new TransactionResult(false, "Unsuccessful update of account balance.", 0, null);
+	}
+
+	private void waitForWork(boolean business) {
+		// Spin first, the next transaction is usually already on its way
+		for (int spins = 0; spins < SPINS; spins++)
+			Thread.onSpinWait();
+		if (business)
+			businessIdle = true;
+		else
+			storageIdle = true;
+		LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+	}
+
+	private static void idle(int spins) {
+		if (spins < SPINS)
+			Thread.onSpinWait();
+		else
+			LockSupport.parkNanos(IDLE_PARK_NANOS);
+	}
+
+	private static class Waiter {
+		private List<TransactionData> batch;
+		private TransactionResult[] results;
+		private AtomicInteger remaining;
+		private Thread thread;
+
+		public Waiter(List<TransactionData> batch, TransactionResult[] results, int count) {
+			this.batch = batch;
+			this.results = results;
+			this.remaining = new AtomicInteger(count);
+			this.thread = Thread.currentThread();
+		}
+	}
+
+	private static class Slot {
+		private volatile long available;
+		private volatile long published;
+		private Waiter waiter;
+		private int index;
+
+		public Slot(long available) {
+			this.available = available;
+			this.published = -1;
+		}
+	}
+}
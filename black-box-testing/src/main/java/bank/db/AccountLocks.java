@@ -0,0 +1,51 @@
+package bank.db;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import bank.transactions.utils.AccountType;
+
+// A fixed table of locks striped by (user, account type). Accounts that share a stripe serialize, independent
+// accounts go ahead in parallel
+class AccountLocks {
+	public static final int DEFAULT_STRIPES = 1024;
+
+	private ReentrantLock[] stripes;
+	private int mask;
+
+	public AccountLocks(int stripeCount) {
+		super();
+		int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+		this.stripes = new ReentrantLock[size];
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++)
+			stripes[i] = new ReentrantLock();
+	}
+
+	public int stripe(String user, AccountType type) {
+		int hash = user.hashCode() * 31 + type.ordinal();
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	// Takes the stripes in ascending order, so units holding several accounts never wait on each other in a cycle
+	public int[] lock(String user, AccountType[] types) {
+		int[] held = new int[types.length];
+		for (int i = 0; i < types.length; i++)
+			held[i] = stripe(user, types[i]);
+		Arrays.sort(held);
+
+		int count = 0;
+		for (int i = 0; i < held.length; i++) {
+			if (count > 0 && held[count - 1] == held[i])
+				continue;
+			held[count++] = held[i];
+			stripes[held[i]].lock();
+		}
+		return Arrays.copyOf(held, count);
+	}
+
+	public void unlock(int[] held) {
+		for (int i = held.length - 1; i >= 0; i--)
+			stripes[held[i]].unlock();
+	}
+}
@@ -0,0 +1,43 @@
+package bank.db;
+
+import bank.transactions.utils.AccountType;
+
+class BalanceWrite {
+	private String user;
+	private AccountType type;
+	private long balance;
+	private long expected;
+
+	public BalanceWrite(String user, AccountType type, long balance) {
+		this(user, type, balance, 0);
+	}
+
+	public BalanceWrite(String user, AccountType type, long balance, long expected) {
+		super();
+		this.user = user;
+		this.type = type;
+		this.balance = balance;
+		this.expected = expected;
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public AccountType getType() {
+		return type;
+	}
+
+	public long getBalance() {
+		return balance;
+	}
+
+	// The balance the write was computed from, only checked by optimistic units
+	public long getExpected() {
+		return expected;
+	}
+
+	void setBalance(long balance) {
+		this.balance = balance;
+	}
+}
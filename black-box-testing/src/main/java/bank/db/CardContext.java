@@ -0,0 +1,72 @@
+package bank.db;
+
+import java.util.Arrays;
+
+import bank.exceptions.UnsuccessfulBalanceUpdate;
+import bank.exceptions.UserNotFoundException;
+import bank.transactions.utils.AccountType;
+
+public class CardContext {
+	private String cardNumber;
+	private String username;
+	private char[] pin;
+	private Boolean student;
+	private long[] balances;
+	private boolean[] hasAccount;
+	private UnitOfWork unit;
+
+	CardContext(String cardNumber, String username, char[] pin, Boolean student, UnitOfWork unit) {
+		super();
+		this.cardNumber = cardNumber;
+		this.username = username;
+		this.pin = pin;
+		this.student = student;
+		this.unit = unit;
+
+		int accountTypes = AccountType.values().length;
+		this.balances = new long[accountTypes];
+		this.hasAccount = new boolean[accountTypes];
+	}
+
+	public String getCardNumber() {
+		return cardNumber;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public boolean pinMatches(char[] inputPIN) {
+		return Arrays.equals(pin, inputPIN);
+	}
+
+	public boolean isStudent() throws UserNotFoundException {
+		// Cards can outlive their client record
+		if (student == null)
+			throw new UserNotFoundException();
+		return student;
+	}
+
+	public boolean hasAccount(AccountType type) {
+		return hasAccount[type.ordinal()];
+	}
+
+	public long getBalance(AccountType type) throws UserNotFoundException {
+		if (!hasAccount[type.ordinal()])
+			throw new UserNotFoundException();
+		return balances[type.ordinal()];
+	}
+
+	public void updateBalance(AccountType type, long balance) throws UnsuccessfulBalanceUpdate {
+		// Only contexts loaded inside a unit of work can be written back, and only to the accounts it locked
+		if (unit == null || !unit.canUpdate(type))
+			throw new UnsuccessfulBalanceUpdate();
+		unit.setBalance(username, type, balances[type.ordinal()], balance);
+		setBalance(type, balance);
+	}
+
+	void setBalance(AccountType type, long balance) {
+		balances[type.ordinal()] = balance;
+		hasAccount[type.ordinal()] = true;
+	}
+}
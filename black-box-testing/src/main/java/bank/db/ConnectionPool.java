@@ -0,0 +1,93 @@
+package bank.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sqlite.SQLiteConfig;
+
+class ConnectionPool {
+	private static final int BUSY_TIMEOUT_MILLIS = 5000;
+	private static final long BORROW_TIMEOUT_MILLIS = 30000;
+
+	private String url;
+	private int maxSize;
+	private BlockingQueue<PooledConnection> idle;
+	private AtomicInteger created;
+	private volatile boolean closed;
+
+	public ConnectionPool(String url, int maxSize) {
+		super();
+		if (maxSize < 1)
+			throw new IllegalArgumentException("Pool size must be at least 1");
+		this.url = url;
+		this.maxSize = maxSize;
+		this.idle = new ArrayBlockingQueue<>(maxSize);
+		this.created = new AtomicInteger();
+	}
+
+	public Connection openConnection() throws SQLException {
+		SQLiteConfig config = new SQLiteConfig();
+		// Let concurrent writers wait on the file lock instead of failing with SQLITE_BUSY
+		config.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+		// Readers keep going while a unit of work holds the write lock, and a commit is a single WAL append
+		config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+		return DriverManager.getConnection(url, config.toProperties());
+	}
+
+	public PooledConnection borrow() throws SQLException {
+		if (closed)
+			throw new SQLException("Connection pool is closed");
+
+		PooledConnection conn = idle.poll();
+		if (conn != null)
+			return conn;
+
+		// Grow lazily up to the bound
+		while (true) {
+			int count = created.get();
+			if (count >= maxSize)
+				break;
+			if (created.compareAndSet(count, count + 1)) {
+				try {
+					return new PooledConnection(openConnection());
+				} catch (SQLException e) {
+					created.decrementAndGet();
+					throw e;
+				}
+			}
+		}
+
+		try {
+			conn = idle.poll(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection");
+		}
+		if (conn == null)
+			throw new SQLException("Timed out waiting for a database connection");
+		return conn;
+	}
+
+	public void release(PooledConnection conn) {
+		if (conn == null)
+			return;
+		if (closed || !idle.offer(conn)) {
+			conn.close();
+			created.decrementAndGet();
+		}
+	}
+
+	public void close() {
+		closed = true;
+		PooledConnection conn;
+		while ((conn = idle.poll()) != null) {
+			conn.close();
+			created.decrementAndGet();
+		}
+	}
+}
@@ -1,170 +1,640 @@
 package bank.db;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import bank.exceptions.CardNotFoundException;
 import bank.exceptions.UnsuccessfulBalanceUpdate;
 import bank.exceptions.UserNotFoundException;
 import bank.transactions.utils.AccountType;
+import bank.transactions.utils.Money;
 
 public class DBHandler {
-	
-	private Connection conn;
-	
+	public static final String DEFAULT_URL = "jdbc:sqlite:bank.db";
+	public static final int DEFAULT_POOL_SIZE = 4;
+	public static final int DEFAULT_PROFILE_CACHE_SIZE = 10000;
+	public static final long DEFAULT_PROFILE_CACHE_TTL_MILLIS = 5 * 60 * 1000;
+	public static final int DEFAULT_IDEMPOTENCY_CACHE_SIZE = 100000;
+	public static final long DEFAULT_IDEMPOTENCY_WINDOW_MILLIS = 24 * 60 * 60 * 1000;
+
+	private ConnectionPool pool;
+	private volatile GroupCommitWriter groupCommitWriter;
+	private volatile Ledger ledger;
+	private volatile ProfileCache profiles;
+	private volatile boolean optimistic;
+	private IdempotencyCache idempotency;
+	private AccountLocks accountLocks;
+	private long idempotencyWindowMillis;
+	private ScheduledExecutorService checkpointer;
+
 	public DBHandler() {
+		this(DEFAULT_URL, DEFAULT_POOL_SIZE);
+	}
+
+	public DBHandler(String url, int poolSize) {
+		this(url, poolSize, DEFAULT_IDEMPOTENCY_CACHE_SIZE, DEFAULT_IDEMPOTENCY_WINDOW_MILLIS);
+	}
+
+	public DBHandler(String url, int poolSize, int idempotencyCacheSize, long idempotencyWindowMillis) {
+		pool = new ConnectionPool(url, poolSize);
+		idempotency = new IdempotencyCache(idempotencyCacheSize, idempotencyWindowMillis, this::findResult);
+		accountLocks = new AccountLocks(AccountLocks.DEFAULT_STRIPES);
+		this.idempotencyWindowMillis = idempotencyWindowMillis;
 		createDatabase();
 	}
-	
+
 	public String getCardOwner(String cardNumber) throws CardNotFoundException {
-		String query = "SELECT username FROM cards WHERE card = '" + cardNumber + "';";
-		ResultSet rs = executeQuery(query);
+		ProfileCache cache = profiles;
+		if (cache != null)
+			return cardProfile(cardNumber, cache).getUsername();
+
+		long start = System.nanoTime();
+		PooledConnection conn = null;
 		try {
-			if (rs.next()) {
-				String username = rs.getString("username");
-				return username;
-			} else {
-				throw new CardNotFoundException();
+			conn = pool.borrow();
+			PreparedStatement stmt = conn.statement(Query.CARD_OWNER);
+			stmt.setString(1, cardNumber);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					String username = rs.getString("username");
+					return username;
+				} else {
+					throw new CardNotFoundException();
+				}
 			}
 		} catch (SQLException e) {
 			throw new CardNotFoundException();
+		} finally {
+			pool.release(conn);
+			DBMetrics.CARD_OWNER.record(System.nanoTime() - start);
 		}
 	}
-	
-	public double getBalance(String user, AccountType type) throws UserNotFoundException {
-		String query = "SELECT balance FROM accounts WHERE username = '" + user + "' AND type = '" + type.ordinal() + "';";
-		ResultSet rs = executeQuery(query);
-		try {
-			if (rs.next()) {
-				double balance = rs.getDouble("balance");
-				return balance;
-			} else {
+
+	public long getBalance(String user, AccountType type) throws UserNotFoundException {
+		Ledger current = ledger;
+		if (current != null) {
+			int slot = current.slot(user, type);
+			if (!current.has(slot))
 				throw new UserNotFoundException();
+			return current.get(slot);
+		}
+
+		long start = System.nanoTime();
+		PooledConnection conn = null;
+		try {
+			conn = pool.borrow();
+			PreparedStatement stmt = conn.statement(Query.BALANCE);
+			stmt.setString(1, user);
+			stmt.setInt(2, type.ordinal());
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					long balance = rs.getLong("balance");
+					return balance;
+				} else {
+					throw new UserNotFoundException();
+				}
 			}
 		} catch (SQLException e) {
 			throw new UserNotFoundException();
+		} finally {
+			pool.release(conn);
+			DBMetrics.BALANCE.record(System.nanoTime() - start);
 		}
 	}
-	
-	public void setBalance(String user, AccountType type, double balance) throws UnsuccessfulBalanceUpdate {
-		String query = String.format(
-				"REPLACE INTO accounts(username, type, balance) VALUES ('%s', '%d', %f);",
-				user, type.ordinal(), balance);
-		
-		boolean balanceSet = executeUpdate(query);
-		
-		if (!balanceSet)
+
+	public void setBalance(String user, AccountType type, long balance) throws UnsuccessfulBalanceUpdate {
+		Ledger current = ledger;
+		if (current != null) {
+			current.set(user, type, balance);
+			return;
+		}
+
+		GroupCommitWriter writer = groupCommitWriter;
+		if (writer != null) {
+			writer.commit(Collections.singletonList(new BalanceWrite(user, type, balance)));
+			return;
+		}
+
+		long start = System.nanoTime();
+		PooledConnection conn = null;
+		try {
+			conn = pool.borrow();
+			PreparedStatement stmt = conn.statement(Query.SET_BALANCE);
+			stmt.setString(1, user);
+			stmt.setInt(2, type.ordinal());
+			stmt.setLong(3, balance);
+			stmt.executeUpdate();
+		} catch (SQLException e) {
+			e.printStackTrace();
 			throw new UnsuccessfulBalanceUpdate();
-		
+		} finally {
+			pool.release(conn);
+			DBMetrics.SET_BALANCE.record(System.nanoTime() - start);
+		}
 	}
-	
+
 	public boolean isStudent(String user) throws UserNotFoundException {
-		String query = "SELECT student FROM clients WHERE username = '" + user + "';";
-		ResultSet rs = executeQuery(query);
+		ProfileCache cache = profiles;
+		if (cache != null) {
+			Profile profile = userProfile(user, cache);
+			if (profile != null && profile.getStudent() != null)
+				return profile.getStudent();
+			// Clients without a card are not cached, ask the clients table directly
+		}
+
+		long start = System.nanoTime();
+		PooledConnection conn = null;
 		try {
-			if (rs.next()) {
-				boolean isStudent = rs.getBoolean("student");
-				return isStudent;
-			} else {
-				throw new UserNotFoundException();
+			conn = pool.borrow();
+			PreparedStatement stmt = conn.statement(Query.STUDENT);
+			stmt.setString(1, user);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					boolean isStudent = rs.getBoolean("student");
+					return isStudent;
+				} else {
+					throw new UserNotFoundException();
+				}
 			}
 		} catch (SQLException e) {
 			throw new UserNotFoundException();
+		} finally {
+			pool.release(conn);
+			DBMetrics.STUDENT.record(System.nanoTime() - start);
 		}
 	}
-	
+
 	public char[] getPIN(String user) throws UserNotFoundException {
-		String query = "SELECT pin FROM cards WHERE username = '" + user + "';";
-		ResultSet rs = executeQuery(query);
-		try {
-			if (rs.next()) {
-				String pin = rs.getString("pin");
-				return pin.toCharArray();
-			} else {
+		ProfileCache cache = profiles;
+		if (cache != null) {
+			Profile profile = userProfile(user, cache);
+			if (profile == null)
 				throw new UserNotFoundException();
+			// Callers may wipe the array they get back
+			return profile.getPin().clone();
+		}
+
+		long start = System.nanoTime();
+		PooledConnection conn = null;
+		try {
+			conn = pool.borrow();
+			PreparedStatement stmt = conn.statement(Query.PIN);
+			stmt.setString(1, user);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					String pin = rs.getString("pin");
+					return pin.toCharArray();
+				} else {
+					throw new UserNotFoundException();
+				}
 			}
 		} catch (SQLException e) {
 			throw new UserNotFoundException();
+		} finally {
+			pool.release(conn);
+			DBMetrics.PIN.record(System.nanoTime() - start);
 		}
 	}
-	
-	private void createDatabase() {
-		String url = "jdbc:sqlite:bank.db";
 
+	public CardContext loadCardContext(String cardNumber) throws CardNotFoundException {
+		ProfileCache cache = profiles;
+		Ledger current = ledger;
+		Profile cached = cachedProfile(cache, cardNumber);
+		if (cached != null && current != null)
+			return ledgerContext(cached, cardNumber, null, current);
+
+		long start = System.nanoTime();
+		PooledConnection conn = null;
 		try {
-			conn = DriverManager.getConnection(url);
-			Statement stmt = conn.createStatement();
-			createTables(stmt);
+			conn = pool.borrow();
+			return readCardContext(conn, cardNumber, null, current, cache, cached);
 		} catch (SQLException e) {
-			System.out.println("SQLite Database creation: " + e.getMessage());
+			throw new CardNotFoundException();
+		} finally {
+			pool.release(conn);
+			DBMetrics.CARD_CONTEXT.record(System.nanoTime() - start);
 		}
 	}
 
-	private void createTables(Statement stmt) throws SQLException {
-		if (conn != null) {
-			String createTable;
-
-			// Create table for clients
-			createTable = "CREATE TABLE IF NOT EXISTS clients (\n" 
-										+ " username text NOT NULL,\n"
-										+ " first text NOT NULL,\n" 
-										+ " last text NOT NULL,\n" 
-										+ " student integer,\n" 
-										+ " PRIMARY KEY(username)" 
-						+ ");";
-			stmt.execute(createTable);
-
-			// Create table for accounts
-			createTable = "CREATE TABLE IF NOT EXISTS accounts (\n" 
-										+ " username text NOT NULL,\n"
-										+ " type integer,\n" 
-										+ " balance real,\n" 
-										+ " PRIMARY KEY(username, type)" 
-						+ ");";
-			stmt.execute(createTable);
-			
-			// Create table for cards
-			createTable = "CREATE TABLE IF NOT EXISTS cards (\n" 
-										+ " card text NOT NULL,\n"
-										+ " username text NOT NULL,\n"
-										+ " pin text NOT NULL,\n" 
-										+ " PRIMARY KEY(card)" 
-						+ ");";
-			
-			
-			stmt.execute(createTable);
-		}
-	}
-	
-	private ResultSet executeQuery(String query) {
-		Statement stmt;
-		ResultSet rs;
-		
+	public UnitOfWork begin() {
+		return new UnitOfWork(pool, groupCommitWriter, ledger, profiles, idempotency, accountLocks, optimistic);
+	}
+
+	public CompletableFuture<Void> setBalanceAsync(String user, AccountType type, long balance) {
+		GroupCommitWriter writer = groupCommitWriter;
+		if (writer != null && ledger == null)
+			return writer.submit(Collections.singletonList(new BalanceWrite(user, type, balance)));
+
+		CompletableFuture<Void> future = new CompletableFuture<>();
 		try {
-			stmt = conn.createStatement();
-			rs = stmt.executeQuery(query);
+			setBalance(user, type, balance);
+			future.complete(null);
+		} catch (UnsuccessfulBalanceUpdate e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	public synchronized void enableGroupCommit(int maxBatchSize, long maxDelayMicros) {
+		// Balance writes from every caller are funneled to one writer thread and committed together
+		if (groupCommitWriter != null)
+			return;
+		GroupCommitWriter writer = new GroupCommitWriter(pool, maxBatchSize, maxDelayMicros);
+		writer.start();
+		groupCommitWriter = writer;
+	}
+
+	public boolean isGroupCommitEnabled() {
+		return groupCommitWriter != null;
+	}
+
+	public synchronized void enableOptimisticUpdates() {
+		// Units read without a lock and only write if the balances they read are unchanged, so several bank
+		// processes can share the file. The ledger and group commit take precedence
+		optimistic = true;
+	}
+
+	public boolean isOptimisticUpdatesEnabled() {
+		return optimistic;
+	}
+
+	public synchronized void enableLedger(long checkpointIntervalMillis) throws SQLException {
+		// Balances move into memory, SQLite only sees the startup load and periodic checkpoints
+		if (ledger != null)
+			return;
+		Ledger loaded = new Ledger();
+		PooledConnection conn = pool.borrow();
+		try {
+			loaded.load(conn);
+		} finally {
+			pool.release(conn);
+		}
+		ledger = loaded;
+
+		checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "bank-ledger-checkpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		checkpointer.scheduleWithFixedDelay(() -> {
+			try {
+				checkpoint();
+			} catch (SQLException e) {
+				System.out.println("Ledger checkpoint: " + e.getMessage());
+			}
+		}, checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public boolean isLedgerEnabled() {
+		return ledger != null;
+	}
+
+	public synchronized void enableProfileCache(int maxEntries, long ttlMillis) {
+		// Card owner, PIN and student flag are served from memory until they expire or are invalidated
+		if (profiles != null)
+			return;
+		profiles = new ProfileCache(maxEntries, ttlMillis);
+	}
+
+	public boolean isProfileCacheEnabled() {
+		return profiles != null;
+	}
+
+	public void invalidateCard(String cardNumber) {
+		ProfileCache cache = profiles;
+		if (cache != null)
+			cache.invalidateCard(cardNumber);
+	}
+
+	public void invalidateUser(String user) {
+		ProfileCache cache = profiles;
+		if (cache != null)
+			cache.invalidateUser(user);
+	}
+
+	public long getProfileCacheHits() {
+		ProfileCache cache = profiles;
+		return cache == null ? 0 : cache.getHits();
+	}
+
+	public long getProfileCacheMisses() {
+		ProfileCache cache = profiles;
+		return cache == null ? 0 : cache.getMisses();
+	}
+
+	public long getProfileCacheEvictions() {
+		ProfileCache cache = profiles;
+		return cache == null ? 0 : cache.getEvictions();
+	}
+
+	public int checkpoint() throws SQLException {
+		Ledger current = ledger;
+		if (current == null)
+			return 0;
+		PooledConnection conn = pool.borrow();
+		try {
+			return current.checkpoint(conn);
+		} finally {
+			pool.release(conn);
+		}
+	}
+
+	static Profile cachedProfile(ProfileCache profiles, String cardNumber) {
+		return profiles == null ? null : profiles.getByCard(cardNumber);
+	}
+
+	static CardContext ledgerContext(Profile profile, String cardNumber, UnitOfWork unit, Ledger ledger) {
+		CardContext context = profile.newContext(cardNumber, unit);
+		for (AccountType type : AccountType.values()) {
+			int slot = ledger.slot(context.getUsername(), type);
+			if (ledger.has(slot))
+				context.setBalance(type, ledger.get(slot));
+		}
+		return context;
+	}
+
+	static CardContext readCardContext(PooledConnection conn, String cardNumber, UnitOfWork unit, Ledger ledger,
+			ProfileCache profiles, Profile cached) throws SQLException, CardNotFoundException {
+		AccountType[] types = AccountType.values();
+		Profile profile = cached;
+		boolean locking = unit != null && unit.needsLocks();
+		if (profile == null && (ledger != null || locking)) {
+			// Only the profile comes from SQLite, the owner has to be known to lock or find the balances
+			PreparedStatement stmt = conn.statement(Query.CARD_PROFILE);
+			stmt.setString(1, cardNumber);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (!rs.next())
+					throw new CardNotFoundException();
+				profile = readProfile(rs);
+				if (profiles != null)
+					profiles.putCard(cardNumber, profile);
+			}
+		}
+		if (locking)
+			unit.lockAccounts(profile.getUsername());
+		if (profile != null && ledger != null)
+			return ledgerContext(profile, cardNumber, unit, ledger);
+		if (profile != null) {
+			// The profile is known, only the balances are read
+			CardContext context = profile.newContext(cardNumber, unit);
+			PreparedStatement stmt = conn.statement(Query.USER_BALANCES);
+			stmt.setString(1, context.getUsername());
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					int type = rs.getInt("type");
+					if (!rs.wasNull() && type >= 0 && type < types.length)
+						context.setBalance(types[type], rs.getLong("balance"));
+				}
+			}
+			return context;
+		}
+
+		PreparedStatement stmt = conn.statement(Query.CARD_CONTEXT);
+		stmt.setString(1, cardNumber);
+		try (ResultSet rs = stmt.executeQuery()) {
+			if (!rs.next())
+				throw new CardNotFoundException();
+
+			// One row per account, the card and client columns repeat
+			profile = readProfile(rs);
+			if (profiles != null)
+				profiles.putCard(cardNumber, profile);
+			CardContext context = profile.newContext(cardNumber, unit);
+			do {
+				int type = rs.getInt("type");
+				if (!rs.wasNull() && type >= 0 && type < types.length)
+					context.setBalance(types[type], rs.getLong("balance"));
+			} while (rs.next());
+
+			return context;
+		}
+	}
+
+	private static Profile readProfile(ResultSet rs) throws SQLException {
+		int student = rs.getInt("student");
+		Boolean isStudent = rs.wasNull() ? null : student != 0;
+		return new Profile(rs.getString("username"), rs.getString("pin").toCharArray(), isStudent);
+	}
+
+	private Profile cardProfile(String cardNumber, ProfileCache cache) throws CardNotFoundException {
+		Profile profile = cache.getByCard(cardNumber);
+		if (profile != null)
+			return profile;
+
+		PooledConnection conn = null;
+		try {
+			conn = pool.borrow();
+			PreparedStatement stmt = conn.statement(Query.CARD_PROFILE);
+			stmt.setString(1, cardNumber);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (!rs.next())
+					throw new CardNotFoundException();
+				profile = readProfile(rs);
+				cache.putCard(cardNumber, profile);
+				return profile;
+			}
 		} catch (SQLException e) {
-			e.printStackTrace();
-			return null;
+			throw new CardNotFoundException();
+		} finally {
+			pool.release(conn);
+		}
+	}
+
+	private Profile userProfile(String user, ProfileCache cache) throws UserNotFoundException {
+		Profile profile = cache.getByUser(user);
+		if (profile != null)
+			return profile;
+
+		PooledConnection conn = null;
+		try {
+			conn = pool.borrow();
+			PreparedStatement stmt = conn.statement(Query.USER_PROFILE);
+			stmt.setString(1, user);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (!rs.next())
+					return null;
+				profile = readProfile(rs);
+				cache.putUser(user, profile);
+				return profile;
+			}
+		} catch (SQLException e) {
+			throw new UserNotFoundException();
+		} finally {
+			pool.release(conn);
 		}
+	}
 
-		return rs;
+	Connection openConnection() throws SQLException {
+		return pool.openConnection();
 	}
-	
-	private boolean executeUpdate(String query) {
-		Statement stmt;
+
+	public synchronized void close() {
+		if (checkpointer != null) {
+			checkpointer.shutdownNow();
+			checkpointer = null;
+			try {
+				checkpoint();
+			} catch (SQLException e) {
+				System.out.println("Ledger checkpoint: " + e.getMessage());
+			}
+			ledger = null;
+		}
+		if (groupCommitWriter != null) {
+			groupCommitWriter.stop();
+			groupCommitWriter = null;
+		}
+		pool.close();
+	}
+
+	private void createDatabase() {
+		// The tables have to exist before the pooled connections compile their statements
+		try (Connection conn = pool.openConnection(); Statement stmt = conn.createStatement()) {
+			createTables(stmt);
+			migrateBalancesToCents(conn);
+			loadRecentResults(conn);
+		} catch (SQLException e) {
+			System.out.println("SQLite Database creation: " + e.getMessage());
+		}
+	}
+
+	// Asked by the idempotency cache once it had to drop results that are still inside the window
+	private ResultWrite findResult(String cardNumber, String key) throws SQLException {
+		Ledger current = ledger;
+		if (current != null) {
+			ResultWrite pending = current.findResult(cardNumber, key);
+			if (pending != null)
+				return pending;
+		}
+
+		long start = System.nanoTime();
+		PooledConnection conn = null;
 		try {
-			stmt = conn.createStatement();
-			stmt.executeUpdate(query);
+			conn = pool.borrow();
+			PreparedStatement stmt = conn.statement(Query.FIND_RESULT);
+			stmt.setString(1, cardNumber);
+			stmt.setString(2, key);
+			stmt.setLong(3, System.currentTimeMillis() - idempotencyWindowMillis);
+			try (ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? ResultWrite.read(rs) : null;
+			}
+		} finally {
+			pool.release(conn);
+			DBMetrics.FIND_RESULT.record(System.nanoTime() - start);
+		}
+	}
+
+	private void loadRecentResults(Connection conn) throws SQLException {
+		// Keys older than the window are forgotten, the rest survive a restart
+		long windowStart = System.currentTimeMillis() - idempotencyWindowMillis;
+		try (PreparedStatement delete = conn.prepareStatement("DELETE FROM transaction_results WHERE created < ?;")) {
+			delete.setLong(1, windowStart);
+			delete.executeUpdate();
+		}
+		try (PreparedStatement select = conn.prepareStatement(
+				"SELECT card, key, created, successful, reason, fees, balances FROM transaction_results "
+						+ "ORDER BY created;");
+				ResultSet rs = select.executeQuery()) {
+			while (rs.next()) {
+				idempotency.complete(ResultWrite.read(rs));
+			}
+		}
+	}
 
+	private void migrateBalancesToCents(Connection conn) throws SQLException {
+		// Older databases kept balances as real dollars, the real column would turn cents back into floats
+		String balanceType = null;
+		try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA table_info(accounts);")) {
+			while (rs.next()) {
+				if ("balance".equals(rs.getString("name")))
+					balanceType = rs.getString("type");
+			}
+		}
+		if (!"real".equalsIgnoreCase(balanceType))
+			return;
+
+		conn.setAutoCommit(false);
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute("ALTER TABLE accounts RENAME TO accounts_real;");
+			createTables(stmt);
+			try (Statement select = conn.createStatement();
+					ResultSet rs = select.executeQuery("SELECT username, type, balance FROM accounts_real;");
+					PreparedStatement insert = conn.prepareStatement(
+							"INSERT INTO accounts(username, type, balance) VALUES (?, ?, ?);")) {
+				while (rs.next()) {
+					insert.setString(1, rs.getString("username"));
+					insert.setObject(2, rs.getObject("type"));
+					double balance = rs.getDouble("balance");
+					if (rs.wasNull())
+						insert.setNull(3, Types.INTEGER);
+					else
+						insert.setLong(3, Money.fromDouble(balance));
+					insert.addBatch();
+				}
+				insert.executeBatch();
+			}
+			stmt.execute("DROP TABLE accounts_real;");
+			conn.commit();
 		} catch (SQLException e) {
-			e.printStackTrace();
-			return false;
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
 		}
+	}
+
+	private void createTables(Statement stmt) throws SQLException {
+		String createTable;
+
+		// Create table for clients
+		createTable = "CREATE TABLE IF NOT EXISTS clients (\n"
+									+ " username text NOT NULL,\n"
+									+ " first text NOT NULL,\n"
+									+ " last text NOT NULL,\n"
+									+ " student integer,\n"
+									+ " PRIMARY KEY(username)"
+					+ ");";
+		stmt.execute(createTable);
+
+		// Create table for accounts
+		createTable = "CREATE TABLE IF NOT EXISTS accounts (\n"
+									+ " username text NOT NULL,\n"
+									+ " type integer,\n"
+									+ " balance integer,\n"
+									+ " PRIMARY KEY(username, type)"
+					+ ");";
+		stmt.execute(createTable);
+
+		// Create table for cards
+		createTable = "CREATE TABLE IF NOT EXISTS cards (\n"
+									+ " card text NOT NULL,\n"
+									+ " username text NOT NULL,\n"
+									+ " pin text NOT NULL,\n"
+									+ " PRIMARY KEY(card)"
+					+ ");";
+
+
+		stmt.execute(createTable);
 
-		return true;
+		// Create table for the results of idempotency keys
+		createTable = "CREATE TABLE IF NOT EXISTS transaction_results (\n"
+									+ " card text NOT NULL,\n"
+									+ " key text NOT NULL,\n"
+									+ " created integer NOT NULL,\n"
+									+ " successful integer NOT NULL,\n"
+									+ " reason text,\n"
+									+ " fees integer,\n"
+									+ " balances text,\n"
+									+ " PRIMARY KEY(card, key)"
+					+ ");";
+		stmt.execute(createTable);
 	}
 }
@@ -0,0 +1,24 @@
+package bank.db;
+
+import bank.metrics.LatencyHistogram;
+import bank.metrics.MetricsRegistry;
+
+// Time spent in SQLite per operation, the ledger and the profile cache are not counted
+final class DBMetrics {
+	static final LatencyHistogram CARD_OWNER = histogram("cardOwner");
+	static final LatencyHistogram STUDENT = histogram("student");
+	static final LatencyHistogram PIN = histogram("pin");
+	static final LatencyHistogram BALANCE = histogram("balance");
+	static final LatencyHistogram SET_BALANCE = histogram("setBalance");
+	static final LatencyHistogram CARD_CONTEXT = histogram("cardContext");
+	static final LatencyHistogram COMMIT = histogram("commit");
+	static final LatencyHistogram FIND_RESULT = histogram("findResult");
+
+	private DBMetrics() {
+	}
+
+	private static LatencyHistogram histogram(String operation) {
+		return MetricsRegistry.getDefault().histogram("bank_db_seconds", "Time spent in the database per operation.",
+				"operation", operation);
+	}
+}
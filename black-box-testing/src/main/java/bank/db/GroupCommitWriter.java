@@ -0,0 +1,224 @@
+package bank.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import bank.exceptions.UnsuccessfulBalanceUpdate;
+
+class GroupCommitWriter implements Runnable {
+	private static final long COMMIT_TIMEOUT_MILLIS = 10000;
+
+	private ConnectionPool pool;
+	private int maxBatchSize;
+	private long maxDelayNanos;
+	private BlockingQueue<PendingCommit> queue;
+	private Thread thread;
+	private volatile boolean running;
+
+	public GroupCommitWriter(ConnectionPool pool, int maxBatchSize, long maxDelayMicros) {
+		super();
+		if (maxBatchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		this.pool = pool;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+		this.queue = new LinkedBlockingQueue<>();
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(this, "bank-group-commit");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public CompletableFuture<Void> submit(List<BalanceWrite> writes) {
+		return submit(writes, null);
+	}
+
+	public CompletableFuture<Void> submit(List<BalanceWrite> writes, List<ResultWrite> results) {
+		return enqueue(writes, results).future;
+	}
+
+	public void commit(List<BalanceWrite> writes) throws UnsuccessfulBalanceUpdate {
+		commit(writes, null);
+	}
+
+	public void commit(List<BalanceWrite> writes, List<ResultWrite> results) throws UnsuccessfulBalanceUpdate {
+		PendingCommit pending = enqueue(writes, results);
+		try {
+			try {
+				pending.future.get(COMMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// Still queued means it was never picked up and never will be. Otherwise the writer is flushing it and
+				// always settles what it took, so wait for the real outcome rather than report a unit that may commit
+				if (queue.remove(pending))
+					throw e;
+				pending.future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UnsuccessfulBalanceUpdate();
+		} catch (Exception e) {
+			throw new UnsuccessfulBalanceUpdate();
+		}
+	}
+
+	private PendingCommit enqueue(List<BalanceWrite> writes, List<ResultWrite> results) {
+		PendingCommit pending = new PendingCommit(writes == null ? new ArrayList<>(0) : writes, results);
+		if (!running) {
+			pending.future.completeExceptionally(new UnsuccessfulBalanceUpdate());
+			return pending;
+		}
+		queue.add(pending);
+		// stop() may have drained the queue between the check and the add, take the unit back if nobody did
+		if (!running && queue.remove(pending))
+			pending.future.completeExceptionally(new UnsuccessfulBalanceUpdate());
+		return pending;
+	}
+
+	public void stop() {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		// Whatever arrived after the writer exited is not durable
+		PendingCommit pending;
+		while ((pending = queue.poll()) != null) {
+			pending.future.completeExceptionally(new UnsuccessfulBalanceUpdate());
+		}
+	}
+
+	@Override
+	public void run() {
+		PooledConnection conn = null;
+		List<PendingCommit> batch = new ArrayList<>();
+		try {
+			conn = new PooledConnection(pool.openConnection());
+			while (running || !queue.isEmpty()) {
+				PendingCommit first = running ? queue.take() : queue.poll();
+				if (first == null)
+					break;
+				batch.add(first);
+				collect(batch, first.writes.size());
+				flush(conn, batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			// Stopping, drain what is already queued
+			queue.drainTo(batch);
+			if (conn != null && !batch.isEmpty())
+				flush(conn, batch);
+		} catch (SQLException e) {
+			System.out.println("Group commit writer: " + e.getMessage());
+			running = false;
+			queue.drainTo(batch);
+		} finally {
+			for (PendingCommit pending : batch) {
+				pending.future.completeExceptionally(new UnsuccessfulBalanceUpdate());
+			}
+			if (conn != null)
+				conn.close();
+		}
+	}
+
+	private void collect(List<PendingCommit> batch, int writes) throws InterruptedException {
+		// Keep the batch open for N updates or M microseconds, whichever comes first
+		long deadline = System.nanoTime() + maxDelayNanos;
+		while (writes < maxBatchSize) {
+			long remaining = deadline - System.nanoTime();
+			PendingCommit next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+			if (next == null)
+				break;
+			batch.add(next);
+			writes += next.writes.size();
+		}
+	}
+
+	private void flush(PooledConnection conn, List<PendingCommit> batch) {
+		if (apply(conn, batch)) {
+			complete(batch);
+			return;
+		}
+		// One bad unit must not fail the rest of the group, retry each unit on its own
+		for (PendingCommit pending : batch) {
+			List<PendingCommit> single = new ArrayList<>(1);
+			single.add(pending);
+			if (apply(conn, single)) {
+				complete(single);
+			} else {
+				pending.future.completeExceptionally(new UnsuccessfulBalanceUpdate());
+			}
+		}
+		batch.clear();
+	}
+
+	private boolean apply(PooledConnection conn, List<PendingCommit> batch) {
+		try {
+			conn.statement(Query.BEGIN).execute();
+			try {
+				PreparedStatement stmt = conn.statement(Query.SET_BALANCE);
+				for (PendingCommit pending : batch) {
+					for (BalanceWrite write : pending.writes) {
+						stmt.setString(1, write.getUser());
+						stmt.setInt(2, write.getType().ordinal());
+						stmt.setLong(3, write.getBalance());
+						stmt.addBatch();
+					}
+				}
+				stmt.executeBatch();
+				PreparedStatement save = null;
+				for (PendingCommit pending : batch) {
+					if (pending.results == null)
+						continue;
+					if (save == null)
+						save = conn.statement(Query.SAVE_RESULT);
+					for (ResultWrite result : pending.results) {
+						result.bind(save);
+						save.addBatch();
+					}
+				}
+				if (save != null)
+					save.executeBatch();
+				conn.statement(Query.COMMIT).execute();
+				return true;
+			} catch (SQLException e) {
+				conn.statement(Query.ROLLBACK).execute();
+				return false;
+			}
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void complete(List<PendingCommit> batch) {
+		for (PendingCommit pending : batch) {
+			pending.future.complete(null);
+		}
+		batch.clear();
+	}
+
+	private static class PendingCommit {
+		private List<BalanceWrite> writes;
+		private List<ResultWrite> results;
+		private CompletableFuture<Void> future;
+
+		public PendingCommit(List<BalanceWrite> writes, List<ResultWrite> results) {
+			this.writes = writes;
+			this.results = results;
+			this.future = new CompletableFuture<>();
+		}
+	}
+}
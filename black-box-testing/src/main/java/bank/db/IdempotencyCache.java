@@ -0,0 +1,182 @@
+package bank.db;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import bank.transactions.utils.TransactionResult;
+
+// Outcomes of recently performed idempotency keys. A key is claimed by one unit of work at a time, a retry that
+// arrives while the first attempt is still running waits for its outcome instead of performing it again
+class IdempotencyCache {
+	private static final long CLAIM_TIMEOUT_MILLIS = 10000;
+
+	// Where the results dropped from the cache can still be found
+	interface Store {
+		ResultWrite find(String cardNumber, String key) throws SQLException;
+	}
+
+	private LinkedHashMap<String, Outcome> entries;
+	private int maxEntries;
+	private long windowMillis;
+	private Store store;
+	// Set once a result still inside the window was dropped for room, from then on a miss may be a known key
+	private boolean overflowed;
+
+	public IdempotencyCache(int maxEntries, long windowMillis, Store store) {
+		super();
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("Cache size must be at least 1");
+		this.maxEntries = maxEntries;
+		this.windowMillis = windowMillis;
+		this.store = store;
+		// Insertion order, the eldest entry is also the first to leave the window
+		this.entries = new LinkedHashMap<>();
+	}
+
+	public static String id(String cardNumber, String key) {
+		// Keys are chosen by the clients, so they are only unique per card
+		return cardNumber + '\n' + key;
+	}
+
+	// Returns the stored result, or null when the owner now holds the key and has to perform it
+	public TransactionResult claim(String cardNumber, String key, Object owner) {
+		String id = id(cardNumber, key);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLAIM_TIMEOUT_MILLIS);
+		while (true) {
+			Outcome entry;
+			boolean lookUp;
+			synchronized (this) {
+				entry = entries.get(id);
+				if (entry == null || entry.isExpired(System.currentTimeMillis(), windowMillis)) {
+					entries.put(id, new Outcome(owner));
+					evict();
+					lookUp = overflowed;
+					entry = null;
+				} else {
+					lookUp = false;
+					if (entry.result != null)
+						return entry.result;
+					if (entry.owner == owner)
+						return new TransactionResult(false, "Duplicate idempotency key.", 0, null);
+				}
+			}
+			if (entry == null)
+				return lookUp ? lookUp(cardNumber, key, id, owner) : null;
+
+			try {
+				entry.done.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return inProgress();
+			} catch (TimeoutException | ExecutionException e) {
+				return inProgress();
+			}
+		}
+	}
+
+	public synchronized void complete(ResultWrite write) {
+		String id = id(write.getCardNumber(), write.getKey());
+		Outcome previous = entries.remove(id);
+		entries.put(id, new Outcome(write.getResult(), write.getCreatedMillis()));
+		if (previous != null && previous.done != null)
+			previous.done.complete(null);
+		expire(System.currentTimeMillis());
+		evict();
+	}
+
+	public void release(String id, Object owner) {
+		Outcome entry;
+		synchronized (this) {
+			entry = entries.get(id);
+			if (entry == null || entry.owner != owner)
+				return;
+			entries.remove(id);
+		}
+		// Waiters claim the key again and perform it themselves
+		entry.done.complete(null);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private TransactionResult lookUp(String cardNumber, String key, String id, Object owner) {
+		// The key is claimed while the store is asked, so a concurrent retry waits for the answer
+		ResultWrite stored;
+		try {
+			stored = store.find(cardNumber, key);
+		} catch (SQLException e) {
+			System.out.println("Idempotency lookup: " + e.getMessage());
+			release(id, owner);
+			return inProgress();
+		}
+		if (stored == null)
+			return null;
+
+		Outcome entry;
+		synchronized (this) {
+			entry = entries.remove(id);
+			entries.put(id, new Outcome(stored.getResult(), stored.getCreatedMillis()));
+			evict();
+		}
+		if (entry != null && entry.done != null)
+			entry.done.complete(null);
+		return stored.getResult();
+	}
+
+	private void expire(long now) {
+		Iterator<Outcome> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Outcome entry = iterator.next();
+			if (entry.result != null && !entry.isExpired(now, windowMillis))
+				return;
+			if (entry.result != null)
+				iterator.remove();
+		}
+	}
+
+	private void evict() {
+		// Oldest results first, a key still being performed is never dropped
+		Iterator<Outcome> iterator = entries.values().iterator();
+		long now = System.currentTimeMillis();
+		while (entries.size() > maxEntries && iterator.hasNext()) {
+			Outcome entry = iterator.next();
+			if (entry.result == null)
+				continue;
+			if (!entry.isExpired(now, windowMillis))
+				overflowed = true;
+			iterator.remove();
+		}
+	}
+
+	private static TransactionResult inProgress() {
+		return new TransactionResult(false, "The transaction is still being processed.", 0, null);
+	}
+
+	private static class Outcome {
+		private Object owner;
+		private TransactionResult result;
+		private long createdMillis;
+		private CompletableFuture<Void> done;
+
+		public Outcome(Object owner) {
+			this.owner = owner;
+			this.done = new CompletableFuture<>();
+		}
+
+		public Outcome(TransactionResult result, long createdMillis) {
+			this.result = result;
+			this.createdMillis = createdMillis;
+		}
+
+		public boolean isExpired(long now, long windowMillis) {
+			// A key being performed never expires
+			return result != null && now - createdMillis >= windowMillis;
+		}
+	}
+}
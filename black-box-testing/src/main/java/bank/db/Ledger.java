@@ -0,0 +1,249 @@
+package bank.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+import bank.transactions.utils.AccountType;
+
+class Ledger {
+	private static final int ACCOUNT_TYPES = AccountType.values().length;
+	private static final int PAGE_SHIFT = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	// No balance gets anywhere near this many cents, so it marks a missing account
+	private static final long ABSENT = Long.MIN_VALUE;
+
+	private UserIndex users;
+	private volatile Page[] pages;
+	// Idempotency results wait for the checkpoint that makes their balances durable
+	private Queue<ResultWrite> results;
+	// Results taken by the checkpoint in progress, until they are committed or put back
+	private volatile List<ResultWrite> checkpointing;
+	// Commits share the lock and checkpoints take it exclusively, so a snapshot never holds half a unit
+	private StampedLock checkpointLock;
+
+	public Ledger() {
+		super();
+		users = new UserIndex(1024);
+		pages = new Page[0];
+		results = new ConcurrentLinkedQueue<>();
+		checkpointing = Collections.emptyList();
+		checkpointLock = new StampedLock();
+	}
+
+	public void load(PooledConnection conn) throws SQLException {
+		AccountType[] types = AccountType.values();
+		try (ResultSet rs = conn.statement(Query.ALL_BALANCES).executeQuery()) {
+			while (rs.next()) {
+				int type = rs.getInt("type");
+				if (type < 0 || type >= types.length)
+					continue;
+				int slot = slot(users.getOrAdd(rs.getString("username")), types[type]);
+				page(slot, true).balances.set(slot & PAGE_MASK, rs.getLong("balance"));
+			}
+		}
+	}
+
+	public int slot(String user, AccountType type) {
+		int id = users.get(user);
+		return id < 0 ? -1 : slot(id, type);
+	}
+
+	public boolean has(int slot) {
+		Page page = page(slot, false);
+		return page != null && page.balances.get(slot & PAGE_MASK) != ABSENT;
+	}
+
+	public long get(int slot) {
+		return page(slot, false).balances.get(slot & PAGE_MASK);
+	}
+
+	public void set(String user, AccountType type, long balance) {
+		long stamp = checkpointLock.readLock();
+		try {
+			write(user, type, balance);
+		} finally {
+			checkpointLock.unlockRead(stamp);
+		}
+	}
+
+	public void apply(List<BalanceWrite> writes, List<ResultWrite> unitResults) {
+		long stamp = checkpointLock.readLock();
+		try {
+			if (writes != null) {
+				for (BalanceWrite write : writes) {
+					write(write.getUser(), write.getType(), write.getBalance());
+				}
+			}
+			if (unitResults != null)
+				results.addAll(unitResults);
+		} finally {
+			checkpointLock.unlockRead(stamp);
+		}
+	}
+
+	// A result applied but not yet checkpointed, null when the key has none
+	public ResultWrite findResult(String cardNumber, String key) {
+		// Under the lock a result is either still queued or held by the checkpoint
+		long stamp = checkpointLock.readLock();
+		try {
+			for (ResultWrite result : checkpointing) {
+				if (result.getCardNumber().equals(cardNumber) && result.getKey().equals(key))
+					return result;
+			}
+			for (ResultWrite result : results) {
+				if (result.getCardNumber().equals(cardNumber) && result.getKey().equals(key))
+					return result;
+			}
+		} finally {
+			checkpointLock.unlockRead(stamp);
+		}
+		return null;
+	}
+
+	public int checkpoint(PooledConnection conn) throws SQLException {
+		int[] slots;
+		long[] values;
+		int count = 0;
+		List<ResultWrite> pendingResults = new ArrayList<>();
+
+		long stamp = checkpointLock.writeLock();
+		try {
+			Page[] snapshot = pages;
+			int dirty = 0;
+			for (Page page : snapshot) {
+				for (int word = 0; word < page.dirty.length(); word++)
+					dirty += Long.bitCount(page.dirty.get(word));
+			}
+			slots = new int[dirty];
+			values = new long[dirty];
+			for (int p = 0; p < snapshot.length; p++) {
+				Page page = snapshot[p];
+				for (int word = 0; word < page.dirty.length(); word++) {
+					long bits = page.dirty.getAndSet(word, 0L);
+					while (bits != 0) {
+						int offset = (word << 6) + Long.numberOfTrailingZeros(bits);
+						bits &= bits - 1;
+						slots[count] = (p << PAGE_SHIFT) + offset;
+						values[count] = page.balances.get(offset);
+						count++;
+					}
+				}
+			}
+			ResultWrite result;
+			while ((result = results.poll()) != null)
+				pendingResults.add(result);
+			checkpointing = pendingResults;
+		} finally {
+			checkpointLock.unlockWrite(stamp);
+		}
+		if (count == 0 && pendingResults.isEmpty())
+			return 0;
+
+		AccountType[] types = AccountType.values();
+		try {
+			conn.statement(Query.BEGIN).execute();
+			try {
+				PreparedStatement stmt = conn.statement(Query.SET_BALANCE);
+				for (int i = 0; i < count; i++) {
+					stmt.setString(1, users.name(slots[i] / ACCOUNT_TYPES));
+					stmt.setInt(2, types[slots[i] % ACCOUNT_TYPES].ordinal());
+					stmt.setLong(3, values[i]);
+					stmt.addBatch();
+				}
+				stmt.executeBatch();
+				if (!pendingResults.isEmpty()) {
+					PreparedStatement save = conn.statement(Query.SAVE_RESULT);
+					for (ResultWrite result : pendingResults) {
+						result.bind(save);
+						save.addBatch();
+					}
+					save.executeBatch();
+				}
+				conn.statement(Query.COMMIT).execute();
+			} catch (SQLException e) {
+				conn.statement(Query.ROLLBACK).execute();
+				throw e;
+			}
+		} catch (SQLException e) {
+			// Leave the slots dirty for the next checkpoint
+			for (int i = 0; i < count; i++)
+				markDirty(page(slots[i], false), slots[i] & PAGE_MASK);
+			results.addAll(pendingResults);
+			throw e;
+		} finally {
+			checkpointing = Collections.emptyList();
+		}
+		return count;
+	}
+
+	private void write(String user, AccountType type, long balance) {
+		int id = users.get(user);
+		if (id < 0)
+			id = users.getOrAdd(user);
+		int slot = slot(id, type);
+		Page page = page(slot, true);
+		int offset = slot & PAGE_MASK;
+		// Value before dirty bit, the checkpoint clears the bit before it reads the value
+		page.balances.set(offset, balance);
+		markDirty(page, offset);
+	}
+
+	private static void markDirty(Page page, int offset) {
+		int word = offset >>> 6;
+		long bit = 1L << (offset & 63);
+		long current;
+		do {
+			current = page.dirty.get(word);
+			if ((current & bit) != 0)
+				return;
+		} while (!page.dirty.compareAndSet(word, current, current | bit));
+	}
+
+	private static int slot(int id, AccountType type) {
+		return id * ACCOUNT_TYPES + type.ordinal();
+	}
+
+	private Page page(int slot, boolean create) {
+		int index = slot >>> PAGE_SHIFT;
+		Page[] current = pages;
+		if (index < current.length)
+			return current[index];
+		if (!create)
+			return null;
+		return grow(index);
+	}
+
+	private synchronized Page grow(int index) {
+		// Pages never move once allocated, growing only republishes the page table
+		Page[] current = pages;
+		if (index < current.length)
+			return current[index];
+		Page[] grown = new Page[index + 1];
+		System.arraycopy(current, 0, grown, 0, current.length);
+		for (int i = current.length; i < grown.length; i++)
+			grown[i] = new Page();
+		pages = grown;
+		return grown[index];
+	}
+
+	private static class Page {
+		private AtomicLongArray balances;
+		private AtomicLongArray dirty;
+
+		public Page() {
+			balances = new AtomicLongArray(PAGE_SIZE);
+			for (int i = 0; i < PAGE_SIZE; i++)
+				balances.set(i, ABSENT);
+			dirty = new AtomicLongArray(PAGE_SIZE >>> 6);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package bank.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+class PooledConnection {
+	private Connection conn;
+	private PreparedStatement[] statements;
+
+	public PooledConnection(Connection conn) throws SQLException {
+		super();
+		this.conn = conn;
+
+		// Compile the hot statements once for the lifetime of the connection
+		Query[] queries = Query.values();
+		statements = new PreparedStatement[queries.length];
+		try {
+			for (Query query : queries) {
+				statements[query.ordinal()] = conn.prepareStatement(query.getSql());
+			}
+		} catch (SQLException e) {
+			close();
+			throw e;
+		}
+	}
+
+	public Connection getConnection() {
+		return conn;
+	}
+
+	public PreparedStatement statement(Query query) throws SQLException {
+		PreparedStatement stmt = statements[query.ordinal()];
+		stmt.clearParameters();
+		return stmt;
+	}
+
+	public void close() {
+		for (PreparedStatement stmt : statements) {
+			if (stmt != null) {
+				try {
+					stmt.close();
+				} catch (SQLException e) {
+					// Closing anyway
+				}
+			}
+		}
+		try {
+			conn.close();
+		} catch (SQLException e) {
+			// Closing anyway
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package bank.db;
+
+class Profile {
+	private String username;
+	private char[] pin;
+	private Boolean student;
+
+	public Profile(String username, char[] pin, Boolean student) {
+		super();
+		this.username = username;
+		this.pin = pin;
+		this.student = student;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public char[] getPin() {
+		return pin;
+	}
+
+	public Boolean getStudent() {
+		return student;
+	}
+
+	public CardContext newContext(String cardNumber, UnitOfWork unit) {
+		return new CardContext(cardNumber, username, pin, student, unit);
+	}
+}
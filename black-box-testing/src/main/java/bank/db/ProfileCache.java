@@ -0,0 +1,162 @@
+package bank.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+class ProfileCache {
+	// Lookups lock one segment, so concurrent sessions rarely wait on each other
+	private static final int SEGMENTS = 16;
+
+	private Segment[] byCard;
+	private Segment[] byUser;
+	private long ttlNanos;
+	private LongAdder hits;
+	private LongAdder misses;
+	private LongAdder evictions;
+
+	public ProfileCache(int maxEntries, long ttlMillis) {
+		super();
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("Cache size must be at least 1");
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+
+		int perSegment = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+		byCard = new Segment[SEGMENTS];
+		byUser = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++) {
+			byCard[i] = new Segment(perSegment);
+			byUser[i] = new Segment(perSegment);
+		}
+	}
+
+	public Profile getByCard(String cardNumber) {
+		return get(byCard, cardNumber);
+	}
+
+	public Profile getByUser(String username) {
+		return get(byUser, username);
+	}
+
+	public void putCard(String cardNumber, Profile profile) {
+		long expiresAt = System.nanoTime() + ttlNanos;
+		segment(byCard, cardNumber).put(cardNumber, new Cached(profile, expiresAt));
+		segment(byUser, profile.getUsername()).put(profile.getUsername(), new Cached(profile, expiresAt));
+	}
+
+	public void putUser(String username, Profile profile) {
+		segment(byUser, username).put(username, new Cached(profile, System.nanoTime() + ttlNanos));
+	}
+
+	public void invalidateCard(String cardNumber) {
+		Cached removed = segment(byCard, cardNumber).remove(cardNumber);
+		if (removed != null)
+			segment(byUser, removed.profile.getUsername()).remove(removed.profile.getUsername());
+	}
+
+	public void invalidateUser(String username) {
+		segment(byUser, username).remove(username);
+		// Card entries are keyed by card number, so a user's cards have to be found by value
+		for (Segment segment : byCard) {
+			segment.removeUser(username);
+		}
+	}
+
+	public void invalidateAll() {
+		for (int i = 0; i < SEGMENTS; i++) {
+			byCard[i].clearAll();
+			byUser[i].clearAll();
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	private Profile get(Segment[] segments, String key) {
+		Profile profile = segment(segments, key).get(key, System.nanoTime());
+		if (profile == null)
+			misses.increment();
+		else
+			hits.increment();
+		return profile;
+	}
+
+	private static Segment segment(Segment[] segments, String key) {
+		int hash = key.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+	}
+
+	private static class Cached {
+		private Profile profile;
+		private long expiresAt;
+
+		public Cached(Profile profile, long expiresAt) {
+			this.profile = profile;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private class Segment {
+		private LinkedHashMap<String, Cached> entries;
+
+		public Segment(final int capacity) {
+			// Access order, so the eldest entry is the least recently used one
+			entries = new LinkedHashMap<String, Cached>(capacity * 2, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+					if (size() <= capacity)
+						return false;
+					evictions.increment();
+					return true;
+				}
+			};
+		}
+
+		public synchronized Profile get(String key, long now) {
+			Cached entry = entries.get(key);
+			if (entry == null)
+				return null;
+			if (now - entry.expiresAt >= 0) {
+				entries.remove(key);
+				return null;
+			}
+			return entry.profile;
+		}
+
+		public synchronized void put(String key, Cached entry) {
+			entries.put(key, entry);
+		}
+
+		public synchronized Cached remove(String key) {
+			return entries.remove(key);
+		}
+
+		public synchronized void removeUser(String username) {
+			Iterator<Cached> iterator = entries.values().iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().profile.getUsername().equals(username))
+					iterator.remove();
+			}
+		}
+
+		public synchronized void clearAll() {
+			entries.clear();
+		}
+	}
+}
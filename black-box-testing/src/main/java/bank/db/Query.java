@@ -0,0 +1,43 @@
+package bank.db;
+
+enum Query {
+	CARD_OWNER("SELECT username FROM cards WHERE card = ?;"),
+	BALANCE("SELECT balance FROM accounts WHERE username = ? AND type = ?;"),
+	SET_BALANCE("REPLACE INTO accounts(username, type, balance) VALUES (?, ?, ?);"),
+	// The balance read is the version, every update is computed from it
+	COMPARE_AND_SET_BALANCE("UPDATE accounts SET balance = ? WHERE username = ? AND type = ? AND balance = ?;"),
+	STUDENT("SELECT student FROM clients WHERE username = ?;"),
+	PIN("SELECT pin FROM cards WHERE username = ?;"),
+	CARD_CONTEXT("SELECT cards.username, cards.pin, clients.student, accounts.type, accounts.balance "
+			+ "FROM cards "
+			+ "LEFT JOIN clients ON clients.username = cards.username "
+			+ "LEFT JOIN accounts ON accounts.username = cards.username "
+			+ "WHERE cards.card = ?;"),
+	CARD_PROFILE("SELECT cards.username, cards.pin, clients.student "
+			+ "FROM cards "
+			+ "LEFT JOIN clients ON clients.username = cards.username "
+			+ "WHERE cards.card = ?;"),
+	USER_PROFILE("SELECT cards.username, cards.pin, clients.student "
+			+ "FROM cards "
+			+ "LEFT JOIN clients ON clients.username = cards.username "
+			+ "WHERE cards.username = ? LIMIT 1;"),
+	USER_BALANCES("SELECT type, balance FROM accounts WHERE username = ?;"),
+	ALL_BALANCES("SELECT username, type, balance FROM accounts;"),
+	SAVE_RESULT("REPLACE INTO transaction_results(card, key, created, successful, reason, fees, balances) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?);"),
+	FIND_RESULT("SELECT card, key, created, successful, reason, fees, balances FROM transaction_results "
+			+ "WHERE card = ? AND key = ? AND created >= ?;"),
+	BEGIN("BEGIN IMMEDIATE;"),
+	COMMIT("COMMIT;"),
+	ROLLBACK("ROLLBACK;");
+
+	private final String sql;
+
+	private Query(String sql) {
+		this.sql = sql;
+	}
+
+	public String getSql() {
+		return sql;
+	}
+}
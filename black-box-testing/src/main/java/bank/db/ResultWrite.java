@@ -0,0 +1,76 @@
+package bank.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import bank.transactions.utils.TransactionResult;
+
+// The outcome of an idempotency key, stored in the same transaction as the balances it changed
+class ResultWrite {
+	private String cardNumber;
+	private String key;
+	private long createdMillis;
+	private TransactionResult result;
+
+	public ResultWrite(String cardNumber, String key, long createdMillis, TransactionResult result) {
+		super();
+		this.cardNumber = cardNumber;
+		this.key = key;
+		this.createdMillis = createdMillis;
+		this.result = result;
+	}
+
+	public String getCardNumber() {
+		return cardNumber;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public long getCreatedMillis() {
+		return createdMillis;
+	}
+
+	public TransactionResult getResult() {
+		return result;
+	}
+
+	// Binds Query.SAVE_RESULT
+	public void bind(PreparedStatement stmt) throws SQLException {
+		stmt.setString(1, cardNumber);
+		stmt.setString(2, key);
+		stmt.setLong(3, createdMillis);
+		stmt.setInt(4, result.isSuccessful() ? 1 : 0);
+		stmt.setString(5, result.getReason());
+		stmt.setLong(6, result.getFees());
+		long[] balances = result.getAccountBalances();
+		if (balances == null) {
+			stmt.setNull(7, Types.VARCHAR);
+		} else {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < balances.length; i++) {
+				if (i > 0)
+					text.append(',');
+				text.append(balances[i]);
+			}
+			stmt.setString(7, text.toString());
+		}
+	}
+
+	public static ResultWrite read(ResultSet rs) throws SQLException {
+		long[] balances = null;
+		String text = rs.getString("balances");
+		if (text != null) {
+			String[] values = text.isEmpty() ? new String[0] : text.split(",");
+			balances = new long[values.length];
+			for (int i = 0; i < values.length; i++)
+				balances[i] = Long.parseLong(values[i]);
+		}
+		TransactionResult result = new TransactionResult(rs.getInt("successful") != 0, rs.getString("reason"),
+				rs.getLong("fees"), balances);
+		return new ResultWrite(rs.getString("card"), rs.getString("key"), rs.getLong("created"), result);
+	}
+}
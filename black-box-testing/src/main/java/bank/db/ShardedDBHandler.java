@@ -0,0 +1,229 @@
+package bank.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import bank.exceptions.CardNotFoundException;
+import bank.exceptions.UnsuccessfulBalanceUpdate;
+import bank.exceptions.UserNotFoundException;
+import bank.transactions.utils.AccountType;
+
+public class ShardedDBHandler {
+	public static final String DEFAULT_URL_PATTERN = "jdbc:sqlite:bank-%d.db";
+
+	private DBHandler[] shards;
+	// Cards live on their owner's shard and owners never change, so a card's shard can be remembered
+	private ConcurrentMap<String, Integer> cardShards;
+
+	public ShardedDBHandler(DBHandler... shards) {
+		super();
+		if (shards.length < 1)
+			throw new IllegalArgumentException("At least one shard is required");
+		this.shards = shards;
+		this.cardShards = new ConcurrentHashMap<>();
+	}
+
+	public ShardedDBHandler(String urlPattern, int shardCount, int poolSize) {
+		this(open(urlPattern, shardCount, poolSize));
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	public DBHandler getShard(int index) {
+		return shards[index];
+	}
+
+	public int shardOf(String username) {
+		// String.hashCode is fixed by the spec, so rows stay on the same file across restarts
+		int hash = username.hashCode();
+		hash = (hash ^ (hash >>> 16)) * 0x9E3779B9;
+		return Math.floorMod(hash, shards.length);
+	}
+
+	public DBHandler forUser(String username) {
+		return shards[shardOf(username)];
+	}
+
+	public DBHandler forCard(String cardNumber) throws CardNotFoundException {
+		if (shards.length == 1)
+			return shards[0];
+
+		Integer known = cardShards.get(cardNumber);
+		if (known != null)
+			return shards[known];
+
+		// First use of a card, ask every shard which one holds it
+		for (int i = 0; i < shards.length; i++) {
+			try {
+				shards[i].getCardOwner(cardNumber);
+			} catch (CardNotFoundException e) {
+				continue;
+			}
+			cardShards.put(cardNumber, i);
+			return shards[i];
+		}
+		throw new CardNotFoundException();
+	}
+
+	public long getBalance(String user, AccountType type) throws UserNotFoundException {
+		return forUser(user).getBalance(user, type);
+	}
+
+	public void setBalance(String user, AccountType type, long balance) throws UnsuccessfulBalanceUpdate {
+		forUser(user).setBalance(user, type, balance);
+	}
+
+	public void enableGroupCommit(int maxBatchSize, long maxDelayMicros) {
+		// One writer thread per shard
+		for (DBHandler shard : shards) {
+			shard.enableGroupCommit(maxBatchSize, maxDelayMicros);
+		}
+	}
+
+	public void enableOptimisticUpdates() {
+		for (DBHandler shard : shards) {
+			shard.enableOptimisticUpdates();
+		}
+	}
+
+	public void enableLedger(long checkpointIntervalMillis) throws SQLException {
+		for (DBHandler shard : shards) {
+			shard.enableLedger(checkpointIntervalMillis);
+		}
+	}
+
+	public boolean isLedgerEnabled() {
+		for (DBHandler shard : shards) {
+			if (!shard.isLedgerEnabled())
+				return false;
+		}
+		return true;
+	}
+
+	public void enableProfileCache(int maxEntries, long ttlMillis) {
+		for (DBHandler shard : shards) {
+			shard.enableProfileCache(maxEntries, ttlMillis);
+		}
+	}
+
+	public void invalidateCard(String cardNumber) {
+		Integer known = cardShards.remove(cardNumber);
+		if (known != null) {
+			shards[known].invalidateCard(cardNumber);
+			return;
+		}
+		for (DBHandler shard : shards) {
+			shard.invalidateCard(cardNumber);
+		}
+	}
+
+	public void invalidateUser(String username) {
+		forUser(username).invalidateUser(username);
+	}
+
+	public int checkpoint() throws SQLException {
+		int count = 0;
+		for (DBHandler shard : shards) {
+			count += shard.checkpoint();
+		}
+		return count;
+	}
+
+	public boolean isEmpty() throws SQLException {
+		for (DBHandler shard : shards) {
+			try (Connection conn = shard.openConnection(); Statement stmt = conn.createStatement();
+					ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM clients) OR EXISTS (SELECT 1 FROM cards);")) {
+				if (rs.next() && rs.getInt(1) != 0)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	public int importFrom(String sourceUrl) throws SQLException {
+		// Splits a single file database, every row goes to the shard of its username
+		// Opening the source once brings an older file up to the current schema
+		new DBHandler(sourceUrl, 1).close();
+
+		Connection[] targets = new Connection[shards.length];
+		int rows = 0;
+		try (Connection source = DriverManager.getConnection(sourceUrl)) {
+			for (int i = 0; i < shards.length; i++) {
+				targets[i] = shards[i].openConnection();
+				targets[i].setAutoCommit(false);
+			}
+			rows += copy(source, targets, "SELECT username, first, last, student FROM clients;",
+					"REPLACE INTO clients(username, first, last, student) VALUES (?, ?, ?, ?);");
+			rows += copy(source, targets, "SELECT username, type, balance FROM accounts;",
+					"REPLACE INTO accounts(username, type, balance) VALUES (?, ?, ?);");
+			rows += copy(source, targets, "SELECT username, card, pin FROM cards;",
+					"REPLACE INTO cards(username, card, pin) VALUES (?, ?, ?);");
+			for (Connection target : targets) {
+				target.commit();
+			}
+		} catch (SQLException e) {
+			for (Connection target : targets) {
+				if (target != null)
+					target.rollback();
+			}
+			throw e;
+		} finally {
+			for (Connection target : targets) {
+				if (target != null)
+					target.close();
+			}
+		}
+		return rows;
+	}
+
+	public void close() {
+		for (DBHandler shard : shards) {
+			shard.close();
+		}
+	}
+
+	private int copy(Connection source, Connection[] targets, String select, String insert) throws SQLException {
+		PreparedStatement[] inserts = new PreparedStatement[targets.length];
+		int rows = 0;
+		try (Statement stmt = source.createStatement(); ResultSet rs = stmt.executeQuery(select)) {
+			int columns = rs.getMetaData().getColumnCount();
+			while (rs.next()) {
+				// The username is always the first column
+				int shard = shardOf(rs.getString(1));
+				if (inserts[shard] == null)
+					inserts[shard] = targets[shard].prepareStatement(insert);
+				for (int column = 1; column <= columns; column++) {
+					inserts[shard].setObject(column, rs.getObject(column));
+				}
+				inserts[shard].addBatch();
+				rows++;
+			}
+			for (PreparedStatement prepared : inserts) {
+				if (prepared != null)
+					prepared.executeBatch();
+			}
+		} finally {
+			for (PreparedStatement prepared : inserts) {
+				if (prepared != null)
+					prepared.close();
+			}
+		}
+		return rows;
+	}
+
+	private static DBHandler[] open(String urlPattern, int shardCount, int poolSize) {
+		DBHandler[] shards = new DBHandler[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new DBHandler(String.format(urlPattern, i), poolSize);
+		}
+		return shards;
+	}
+}
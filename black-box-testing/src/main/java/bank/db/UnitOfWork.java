@@ -0,0 +1,387 @@
+package bank.db;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import bank.exceptions.BalanceConflictException;
+import bank.exceptions.CardNotFoundException;
+import bank.exceptions.UnsuccessfulBalanceUpdate;
+import bank.journal.TransactionJournal;
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+
+public class UnitOfWork implements AutoCloseable {
+	private ConnectionPool pool;
+	private GroupCommitWriter writer;
+	private Ledger ledger;
+	private ProfileCache profiles;
+	private IdempotencyCache idempotency;
+	private AccountLocks locks;
+	private boolean optimistic;
+	private AccountType[] touched;
+	private int[] heldStripes;
+	private PooledConnection conn;
+	private List<BalanceWrite> writes;
+	private List<ResultWrite> results;
+	private List<String> claims;
+	private TransactionJournal journal;
+	private List<JournalEntry> journalEntries;
+	private boolean finished;
+	private int writeCount;
+
+	UnitOfWork(ConnectionPool pool, GroupCommitWriter writer, Ledger ledger, ProfileCache profiles,
+			IdempotencyCache idempotency, AccountLocks locks, boolean optimistic) {
+		super();
+		this.pool = pool;
+		this.writer = writer;
+		this.ledger = ledger;
+		this.profiles = profiles;
+		this.idempotency = idempotency;
+		this.locks = locks;
+		this.optimistic = optimistic;
+	}
+
+	// Returns the result stored for the key, or null when this unit has to perform it. Claim before the card
+	// context is loaded, a claim can wait for another unit that needs the write lock to finish
+	public TransactionResult claimResult(String cardNumber, String key) {
+		String id = IdempotencyCache.id(cardNumber, key);
+		TransactionResult stored = idempotency.claim(cardNumber, key, this);
+		if (stored == null) {
+			if (claims == null)
+				claims = new ArrayList<>(2);
+			claims.add(id);
+		}
+		return stored;
+	}
+
+	// The result becomes visible to retries once the unit commits
+	public void recordResult(String cardNumber, String key, TransactionResult result) throws UnsuccessfulBalanceUpdate {
+		if (finished)
+			throw new UnsuccessfulBalanceUpdate();
+		ResultWrite write = new ResultWrite(cardNumber, key, System.currentTimeMillis(), result);
+		if (results == null)
+			results = new ArrayList<>(2);
+		results.add(write);
+		if (isBuffered())
+			return;
+
+		try {
+			PreparedStatement stmt = connection().statement(Query.SAVE_RESULT);
+			write.bind(stmt);
+			stmt.executeUpdate();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new UnsuccessfulBalanceUpdate();
+		}
+	}
+
+	// Appended once the unit has committed, a unit that fails or loses a race leaves nothing in the journal
+	public void journal(TransactionJournal journal, TransactionData data, String username, TransactionResult result)
+			throws UnsuccessfulBalanceUpdate {
+		if (finished)
+			throw new UnsuccessfulBalanceUpdate();
+		this.journal = journal;
+		if (journalEntries == null)
+			journalEntries = new ArrayList<>(2);
+		journalEntries.add(new JournalEntry(data, username, result));
+	}
+
+	public CardContext loadCardContext(String cardNumber) throws CardNotFoundException {
+		return loadCardContext(cardNumber, AccountType.values());
+	}
+
+	// Only the touched accounts can be updated through the context, they stay locked until the unit finishes
+	public CardContext loadCardContext(String cardNumber, AccountType[] touched) throws CardNotFoundException {
+		this.touched = touched;
+		Profile cached = DBHandler.cachedProfile(profiles, cardNumber);
+		if (isBuffered()) {
+			// A cached profile and ledger balances need no connection at all
+			if (cached != null && ledger != null) {
+				lockAccounts(cached.getUsername());
+				return DBHandler.ledgerContext(cached, cardNumber, this, ledger);
+			}
+
+			// Buffered units do not hold a connection, the writes are applied on commit
+			long start = System.nanoTime();
+			PooledConnection reader = null;
+			try {
+				reader = pool.borrow();
+				return DBHandler.readCardContext(reader, cardNumber, this, ledger, profiles, cached);
+			} catch (SQLException e) {
+				throw new CardNotFoundException();
+			} finally {
+				pool.release(reader);
+				DBMetrics.CARD_CONTEXT.record(System.nanoTime() - start);
+			}
+		}
+
+		long start = System.nanoTime();
+		try {
+			return DBHandler.readCardContext(connection(), cardNumber, this, null, profiles, cached);
+		} catch (SQLException e) {
+			throw new CardNotFoundException();
+		} finally {
+			DBMetrics.CARD_CONTEXT.record(System.nanoTime() - start);
+		}
+	}
+
+	// Expected is the balance the update was computed from
+	void setBalance(String user, AccountType type, long expected, long balance) throws UnsuccessfulBalanceUpdate {
+		if (isBuffered()) {
+			if (finished)
+				throw new UnsuccessfulBalanceUpdate();
+			if (writes == null)
+				writes = new ArrayList<>(2);
+			writeCount++;
+			if (optimistic) {
+				// A second update of an account in the unit still has to match the balance first read
+				for (BalanceWrite write : writes) {
+					if (write.getUser().equals(user) && write.getType() == type) {
+						write.setBalance(balance);
+						return;
+					}
+				}
+			}
+			writes.add(new BalanceWrite(user, type, balance, expected));
+			return;
+		}
+
+		long start = System.nanoTime();
+		try {
+			PreparedStatement stmt = connection().statement(Query.SET_BALANCE);
+			stmt.setString(1, user);
+			stmt.setInt(2, type.ordinal());
+			stmt.setLong(3, balance);
+			stmt.executeUpdate();
+			writeCount++;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new UnsuccessfulBalanceUpdate();
+		} finally {
+			DBMetrics.SET_BALANCE.record(System.nanoTime() - start);
+		}
+	}
+
+	// Ledger and group commit units read without the SQLite write lock, so two of them could update an account
+	// from the same balance. Direct units are serialized by BEGIN IMMEDIATE, optimistic units check on commit
+	boolean needsLocks() {
+		return (writer != null || ledger != null) && heldStripes == null;
+	}
+
+	void lockAccounts(String user) {
+		if (needsLocks())
+			heldStripes = locks.lock(user, touched == null ? AccountType.values() : touched);
+	}
+
+	boolean canUpdate(AccountType type) {
+		if (!isBuffered() || touched == null)
+			return true;
+		for (AccountType account : touched) {
+			if (account == type)
+				return true;
+		}
+		return false;
+	}
+
+	public int getWriteCount() {
+		return writeCount;
+	}
+
+	public void commit() throws UnsuccessfulBalanceUpdate {
+		if (finished)
+			throw new IllegalStateException("Unit of work already finished");
+		finished = true;
+		if (journalEntries != null && heldStripes == null) {
+			// Direct and optimistic units hold no stripes, take them so records reach the journal in commit order
+			heldStripes = locks.lock(journalEntries.get(0).username, touched == null ? AccountType.values() : touched);
+		}
+		if (ledger != null) {
+			// Durable at the next checkpoint
+			if (writes != null || results != null)
+				ledger.apply(writes, results);
+		} else if (writer != null) {
+			// Blocks until the batch holding these writes is durable
+			if (writes != null || results != null) {
+				long start = System.nanoTime();
+				try {
+					writer.commit(writes, results);
+				} catch (UnsuccessfulBalanceUpdate e) {
+					abort();
+					throw e;
+				} finally {
+					DBMetrics.COMMIT.record(System.nanoTime() - start);
+				}
+			}
+		} else if (optimistic) {
+			if (writes != null || results != null) {
+				long start = System.nanoTime();
+				try {
+					commitOptimistic();
+				} catch (UnsuccessfulBalanceUpdate e) {
+					abort();
+					throw e;
+				} finally {
+					DBMetrics.COMMIT.record(System.nanoTime() - start);
+				}
+			}
+		} else if (conn != null) {
+			long start = System.nanoTime();
+			try {
+				conn.statement(Query.COMMIT).execute();
+			} catch (SQLException e) {
+				e.printStackTrace();
+				abort();
+				throw new UnsuccessfulBalanceUpdate();
+			} finally {
+				DBMetrics.COMMIT.record(System.nanoTime() - start);
+			}
+			pool.release(conn);
+			conn = null;
+		}
+		writes = null;
+
+		if (results != null) {
+			for (ResultWrite result : results)
+				idempotency.complete(result);
+		}
+		results = null;
+		appendJournal();
+		releaseClaims();
+		unlockAccounts();
+	}
+
+	public void rollback() {
+		if (finished)
+			return;
+		finished = true;
+		abort();
+	}
+
+	@Override
+	public void close() {
+		rollback();
+	}
+
+	private boolean isBuffered() {
+		return writer != null || ledger != null || optimistic;
+	}
+
+	private void commitOptimistic() throws UnsuccessfulBalanceUpdate {
+		// The write lock is only held for the compare-and-set, reads and fee computation ran without it
+		PooledConnection writerConn = null;
+		try {
+			writerConn = pool.borrow();
+			writerConn.statement(Query.BEGIN).execute();
+			try {
+				if (writes != null) {
+					PreparedStatement stmt = writerConn.statement(Query.COMPARE_AND_SET_BALANCE);
+					for (BalanceWrite write : writes) {
+						stmt.setLong(1, write.getBalance());
+						stmt.setString(2, write.getUser());
+						stmt.setInt(3, write.getType().ordinal());
+						stmt.setLong(4, write.getExpected());
+						if (stmt.executeUpdate() == 0) {
+							writerConn.statement(Query.ROLLBACK).execute();
+							throw new BalanceConflictException();
+						}
+					}
+				}
+				if (results != null) {
+					PreparedStatement save = writerConn.statement(Query.SAVE_RESULT);
+					for (ResultWrite result : results) {
+						result.bind(save);
+						save.executeUpdate();
+					}
+				}
+				writerConn.statement(Query.COMMIT).execute();
+			} catch (SQLException e) {
+				writerConn.statement(Query.ROLLBACK).execute();
+				throw e;
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new UnsuccessfulBalanceUpdate();
+		} finally {
+			pool.release(writerConn);
+		}
+	}
+
+	private PooledConnection connection() throws SQLException {
+		if (finished)
+			throw new SQLException("Unit of work already finished");
+
+		// Take the write lock up front so the reads and the writes of a unit see the same balances
+		if (conn == null) {
+			PooledConnection borrowed = pool.borrow();
+			try {
+				borrowed.statement(Query.BEGIN).execute();
+			} catch (SQLException e) {
+				pool.release(borrowed);
+				throw e;
+			}
+			conn = borrowed;
+		}
+		return conn;
+	}
+
+	private void appendJournal() {
+		if (journalEntries == null)
+			return;
+		// The balances are committed by now, a record that cannot be written is reported but not undone
+		try {
+			for (JournalEntry entry : journalEntries)
+				journal.append(entry.data, entry.username, entry.result);
+		} catch (IOException e) {
+			System.out.println("Journal append: " + e.getMessage());
+		}
+		journalEntries = null;
+	}
+
+	private void releaseClaims() {
+		// Keys claimed but not performed, such as refused transactions, can be tried again
+		if (claims != null) {
+			for (String id : claims)
+				idempotency.release(id, this);
+		}
+		claims = null;
+	}
+
+	private void unlockAccounts() {
+		if (heldStripes != null)
+			locks.unlock(heldStripes);
+		heldStripes = null;
+	}
+
+	private void abort() {
+		writes = null;
+		results = null;
+		journalEntries = null;
+		releaseClaims();
+		unlockAccounts();
+		if (conn == null)
+			return;
+		try {
+			conn.statement(Query.ROLLBACK).execute();
+		} catch (SQLException e) {
+			// Nothing was written, or the failed commit already ended the transaction
+		}
+		pool.release(conn);
+		conn = null;
+	}
+
+	private static class JournalEntry {
+		private TransactionData data;
+		private String username;
+		private TransactionResult result;
+
+		public JournalEntry(TransactionData data, String username, TransactionResult result) {
+			this.data = data;
+			this.username = username;
+			this.result = result;
+		}
+	}
+}
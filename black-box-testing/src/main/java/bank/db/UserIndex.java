@@ -0,0 +1,97 @@
+package bank.db;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+class UserIndex {
+	private volatile Table table;
+	private volatile String[] names;
+	private int size;
+
+	public UserIndex(int expectedUsers) {
+		super();
+		table = new Table(capacityFor(expectedUsers));
+		names = new String[Math.max(16, expectedUsers)];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int get(String user) {
+		// Lock-free and allocation-free, a miss only means the user is not known yet
+		Table t = table;
+		int mask = t.ids.length - 1;
+		for (int i = spread(user.hashCode()) & mask;; i = (i + 1) & mask) {
+			String key = t.keys.get(i);
+			if (key == null)
+				return -1;
+			if (key.equals(user))
+				return t.ids[i];
+		}
+	}
+
+	public synchronized int getOrAdd(String user) {
+		int id = get(user);
+		if (id >= 0)
+			return id;
+
+		id = size++;
+		if (id >= names.length) {
+			String[] grown = new String[names.length * 2];
+			System.arraycopy(names, 0, grown, 0, names.length);
+			names = grown;
+		}
+		names[id] = user;
+
+		// Keep the table at most half full so probe sequences stay short
+		Table t = table;
+		if (size * 2 > t.ids.length) {
+			Table grown = new Table(t.ids.length * 2);
+			for (int i = 0; i < t.ids.length; i++) {
+				String key = t.keys.get(i);
+				if (key != null)
+					grown.put(key, t.ids[i]);
+			}
+			grown.put(user, id);
+			table = grown;
+		} else {
+			t.put(user, id);
+		}
+		return id;
+	}
+
+	public String name(int id) {
+		return names[id];
+	}
+
+	private static int capacityFor(int expectedUsers) {
+		int capacity = 16;
+		while (capacity < expectedUsers * 2)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private static int spread(int hash) {
+		return (hash ^ (hash >>> 16)) * 0x9E3779B9;
+	}
+
+	private static class Table {
+		private AtomicReferenceArray<String> keys;
+		private int[] ids;
+
+		public Table(int capacity) {
+			keys = new AtomicReferenceArray<>(capacity);
+			ids = new int[capacity];
+		}
+
+		public void put(String key, int id) {
+			int mask = ids.length - 1;
+			int i = spread(key.hashCode()) & mask;
+			while (keys.get(i) != null)
+				i = (i + 1) & mask;
+			// The id has to be visible before the key that publishes it
+			ids[i] = id;
+			keys.set(i, key);
+		}
+	}
+}
@@ -0,0 +1,6 @@
+package bank.exceptions;
+
+// An account changed between the read and the write of an optimistic update, the caller may read and try again
+public class BalanceConflictException extends UnsuccessfulBalanceUpdate {
+
+}
@@ -0,0 +1,9 @@
+package bank.exceptions;
+
+public class WireFormatException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	public WireFormatException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,144 @@
+package bank.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionType;
+
+public class JournalRecord {
+	// length and CRC in front of every record
+	static final int HEADER_SIZE = 8;
+
+	private long sequence;
+	private long timestamp;
+	private TransactionType type;
+	private String cardNumber;
+	private String username;
+	private AccountType[] accounts;
+	private long[] balances;
+	private long amount;
+	private long fees;
+
+	public JournalRecord(long sequence, long timestamp, TransactionType type, String cardNumber, String username,
+			AccountType[] accounts, long[] balances, long amount, long fees) {
+		super();
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+		this.type = type;
+		this.cardNumber = cardNumber;
+		this.username = username;
+		this.accounts = accounts;
+		this.balances = balances;
+		this.amount = amount;
+		this.fees = fees;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public TransactionType getType() {
+		return type;
+	}
+
+	public String getCardNumber() {
+		return cardNumber;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public AccountType[] getAccounts() {
+		return accounts;
+	}
+
+	public long[] getBalances() {
+		return balances;
+	}
+
+	public long getAmount() {
+		return amount;
+	}
+
+	public long getFees() {
+		return fees;
+	}
+
+	byte[] encode() {
+		byte[] card = cardNumber.getBytes(StandardCharsets.UTF_8);
+		byte[] user = username.getBytes(StandardCharsets.UTF_8);
+		int bodySize = 8 + 8 + 1 + 2 + card.length + 2 + user.length + 1 + accounts.length * 9 + 8 + 8;
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+		buffer.putInt(bodySize);
+		buffer.putInt(0);
+		buffer.putLong(sequence);
+		buffer.putLong(timestamp);
+		buffer.put((byte) type.ordinal());
+		buffer.putShort((short) card.length);
+		buffer.put(card);
+		buffer.putShort((short) user.length);
+		buffer.put(user);
+		buffer.put((byte) accounts.length);
+		for (int i = 0; i < accounts.length; i++) {
+			buffer.put((byte) accounts[i].ordinal());
+			buffer.putLong(balances[i]);
+		}
+		buffer.putLong(amount);
+		buffer.putLong(fees);
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), HEADER_SIZE, bodySize);
+		buffer.putInt(4, (int) crc.getValue());
+		return buffer.array();
+	}
+
+	static JournalRecord decode(ByteBuffer buffer) {
+		// Returns null at the end of the written region or at a torn record
+		if (buffer.remaining() < HEADER_SIZE)
+			return null;
+		int start = buffer.position();
+		int bodySize = buffer.getInt(start);
+		if (bodySize <= 0 || bodySize > buffer.remaining() - HEADER_SIZE)
+			return null;
+		int expectedCrc = buffer.getInt(start + 4);
+
+		byte[] body = new byte[bodySize];
+		buffer.position(start + HEADER_SIZE);
+		buffer.get(body);
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, bodySize);
+		if ((int) crc.getValue() != expectedCrc) {
+			buffer.position(start);
+			return null;
+		}
+
+		ByteBuffer in = ByteBuffer.wrap(body);
+		long sequence = in.getLong();
+		long timestamp = in.getLong();
+		TransactionType type = TransactionType.values()[in.get()];
+		byte[] card = new byte[in.getShort()];
+		in.get(card);
+		byte[] user = new byte[in.getShort()];
+		in.get(user);
+		int count = in.get();
+		AccountType[] accounts = new AccountType[count];
+		long[] balances = new long[count];
+		for (int i = 0; i < count; i++) {
+			accounts[i] = AccountType.values()[in.get()];
+			balances[i] = in.getLong();
+		}
+		long amount = in.getLong();
+		long fees = in.getLong();
+
+		return new JournalRecord(sequence, timestamp, type, new String(card, StandardCharsets.UTF_8),
+				new String(user, StandardCharsets.UTF_8), accounts, balances, amount, fees);
+	}
+}
@@ -0,0 +1,301 @@
+package bank.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import bank.db.DBHandler;
+import bank.db.ShardedDBHandler;
+import bank.exceptions.UnsuccessfulBalanceUpdate;
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+
+public class TransactionJournal implements AutoCloseable {
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private static final int MAGIC = 0x424a4e4c;
+	// Version 1 records hold balances, amounts and fees as long cents
+	private static final int VERSION = 1;
+	private static final int SEGMENT_HEADER_SIZE = 8;
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	private Path directory;
+	private int segmentSize;
+	private boolean forceOnAppend;
+	private FileChannel activeChannel;
+	private MappedByteBuffer active;
+	private Path activePath;
+	private long nextSequence;
+
+	public TransactionJournal(Path directory, int segmentSize, boolean forceOnAppend) throws IOException {
+		super();
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.forceOnAppend = forceOnAppend;
+		Files.createDirectories(directory);
+		recover();
+	}
+
+	public synchronized long append(TransactionData data, String username, TransactionResult result)
+			throws IOException {
+		AccountType[] accounts = data.getAccounts();
+		long[] balances = result.getAccountBalances();
+		int count = Math.min(balances.length, accounts.length);
+		AccountType[] touched = new AccountType[count];
+		System.arraycopy(accounts, 0, touched, 0, count);
+
+		JournalRecord record = new JournalRecord(nextSequence, System.currentTimeMillis(), data.getType(),
+				data.getCardNumber(), username, touched, balances, data.getAmount(), result.getFees());
+		byte[] encoded = record.encode();
+		if (encoded.length > segmentSize - SEGMENT_HEADER_SIZE)
+			throw new IOException("Journal record larger than a segment");
+
+		// Roll over to a fresh segment when the record does not fit
+		if (active.remaining() < encoded.length)
+			openSegment(nextSequence);
+		active.put(encoded);
+		if (forceOnAppend)
+			active.force();
+
+		return nextSequence++;
+	}
+
+	public synchronized long getNextSequence() {
+		return nextSequence;
+	}
+
+	public synchronized void force() {
+		active.force();
+	}
+
+	public synchronized void replay(Consumer<JournalRecord> visitor) throws IOException {
+		for (Path segment : segments()) {
+			try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (!hasHeader(buffer))
+					continue;
+				buffer.position(SEGMENT_HEADER_SIZE);
+				JournalRecord record;
+				while ((record = JournalRecord.decode(buffer)) != null) {
+					visitor.accept(record);
+				}
+			}
+		}
+	}
+
+	public void replay(DBHandler dbHandler) throws IOException {
+		replayBalances(user -> dbHandler);
+	}
+
+	public void replay(ShardedDBHandler storage) throws IOException {
+		replayBalances(storage::forUser);
+	}
+
+	private void replayBalances(Function<String, DBHandler> shards) throws IOException {
+		// Records hold resulting balances, so replaying in order is idempotent
+		List<JournalRecord> failed = new ArrayList<>();
+		replay(record -> {
+			AccountType[] accounts = record.getAccounts();
+			for (int i = 0; i < accounts.length; i++) {
+				try {
+					shards.apply(record.getUsername()).setBalance(record.getUsername(), accounts[i],
+							record.getBalances()[i]);
+				} catch (UnsuccessfulBalanceUpdate e) {
+					failed.add(record);
+				}
+			}
+		});
+		if (!failed.isEmpty())
+			throw new IOException("Could not replay journal record " + failed.get(0).getSequence());
+	}
+
+	public synchronized int compact() throws IOException {
+		// Keep only the newest record for each account in the sealed segments, the active one is left alone
+		List<Path> sealed = segments();
+		sealed.remove(activePath);
+		if (sealed.isEmpty())
+			return 0;
+
+		List<JournalRecord> records = new ArrayList<>();
+		for (Path segment : sealed) {
+			try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (!hasHeader(buffer))
+					continue;
+				buffer.position(SEGMENT_HEADER_SIZE);
+				JournalRecord record;
+				while ((record = JournalRecord.decode(buffer)) != null) {
+					records.add(record);
+				}
+			}
+		}
+
+		Map<String, Long> latest = new HashMap<>();
+		for (JournalRecord record : records) {
+			for (AccountType account : record.getAccounts()) {
+				latest.put(record.getUsername() + '\u0000' + account.ordinal(), record.getSequence());
+			}
+		}
+
+		List<byte[]> kept = new ArrayList<>();
+		int size = SEGMENT_HEADER_SIZE;
+		for (JournalRecord record : records) {
+			for (AccountType account : record.getAccounts()) {
+				if (latest.get(record.getUsername() + '\u0000' + account.ordinal()) == record.getSequence()) {
+					byte[] encoded = record.encode();
+					kept.add(encoded);
+					size += encoded.length;
+					break;
+				}
+			}
+		}
+
+		ByteBuffer compacted = ByteBuffer.allocate(size);
+		compacted.putInt(MAGIC);
+		compacted.putInt(VERSION);
+		for (byte[] encoded : kept) {
+			compacted.put(encoded);
+		}
+		compacted.flip();
+
+		// Write beside the first sealed segment and swap it in, then drop the rest
+		Path target = sealed.get(0);
+		Path temp = directory.resolve(target.getFileName() + ".compact");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (compacted.hasRemaining())
+				channel.write(compacted);
+			channel.force(true);
+		}
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		for (int i = 1; i < sealed.size(); i++) {
+			Files.delete(sealed.get(i));
+		}
+
+		return records.size() - kept.size();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (active != null)
+			active.force();
+		if (activeChannel != null)
+			activeChannel.close();
+		active = null;
+		activeChannel = null;
+	}
+
+	private void recover() throws IOException {
+		List<Path> segments = segments();
+		if (segments.isEmpty()) {
+			nextSequence = 0;
+			openSegment(0);
+			return;
+		}
+
+		// Find the last good record, a torn tail from a crash is overwritten by the next append. Record framing is
+		// the same in every format version, so segments in an older format still count towards the sequence
+		long lastSequence = -1;
+		for (Path segment : segments) {
+			try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (buffer.limit() < SEGMENT_HEADER_SIZE || buffer.getInt(0) != MAGIC)
+					continue;
+				buffer.position(SEGMENT_HEADER_SIZE);
+				JournalRecord record;
+				while ((record = JournalRecord.decode(buffer)) != null) {
+					lastSequence = record.getSequence();
+				}
+			}
+		}
+		// A new segment is named after its first sequence, which must come after every existing segment
+		nextSequence = Math.max(lastSequence + 1, firstSequence(segments.get(segments.size() - 1)) + 1);
+
+		Path last = segments.get(segments.size() - 1);
+		if (Files.size(last) != segmentSize) {
+			// Compacted segments are sealed
+			openSegment(nextSequence);
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+			channel.read(header, 0);
+			if (header.getInt(0) == MAGIC && header.getInt(4) != VERSION) {
+				// Never append to a segment written in another format
+				openSegment(nextSequence);
+				return;
+			}
+		}
+		nextSequence = lastSequence + 1;
+		activePath = last;
+		activeChannel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		if (!hasHeader(active)) {
+			active.putInt(0, MAGIC);
+			active.putInt(4, VERSION);
+		}
+		active.position(SEGMENT_HEADER_SIZE);
+		while (JournalRecord.decode(active) != null) {
+			// Skip over the records already written
+		}
+		// Zero whatever a torn record left behind so a later scan stops cleanly
+		for (int i = active.position(); i < Math.min(active.limit(), active.position() + JournalRecord.HEADER_SIZE); i++) {
+			active.put(i, (byte) 0);
+		}
+	}
+
+	private void openSegment(long firstSequence) throws IOException {
+		if (active != null) {
+			active.force();
+			activeChannel.close();
+		}
+		activePath = directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+		// CREATE_NEW, an existing segment is never reused as a fresh one
+		activeChannel = FileChannel.open(activePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		// Fixed size segments, so appends never extend the file
+		active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		active.putInt(MAGIC);
+		active.putInt(VERSION);
+	}
+
+	private List<Path> segments() throws IOException {
+		List<Path> segments = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			for (Path segment : stream) {
+				segments.add(segment);
+			}
+		}
+		// Zero padded first sequence numbers sort in journal order
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private static long firstSequence(Path segment) {
+		String name = segment.getFileName().toString();
+		try {
+			return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static boolean hasHeader(ByteBuffer buffer) {
+		return buffer.limit() >= SEGMENT_HEADER_SIZE && buffer.getInt(0) == MAGIC
+				&& buffer.getInt(4) == VERSION;
+	}
+}
@@ -0,0 +1,20 @@
+package bank.json;
+
+public class Credentials {
+	private String cardNumber;
+	private char[] pin;
+
+	public Credentials(String cardNumber, char[] pin) {
+		super();
+		this.cardNumber = cardNumber;
+		this.pin = pin;
+	}
+
+	public String getCardNumber() {
+		return cardNumber;
+	}
+
+	public char[] getPin() {
+		return pin;
+	}
+}
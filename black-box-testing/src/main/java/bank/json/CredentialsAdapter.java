@@ -0,0 +1,49 @@
+package bank.json;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+public class CredentialsAdapter extends TypeAdapter<Credentials> {
+
+	@Override
+	public void write(JsonWriter out, Credentials credentials) throws IOException {
+		if (credentials == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("cardNumber").value(credentials.getCardNumber());
+		out.name("pin").value(credentials.getPin() == null ? null : String.valueOf(credentials.getPin()));
+		out.endObject();
+	}
+
+	@Override
+	public Credentials read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+
+		String cardNumber = null;
+		char[] pin = null;
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+			} else if (name.equals("cardNumber")) {
+				cardNumber = in.nextString();
+			} else if (name.equals("pin")) {
+				pin = in.nextString().toCharArray();
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return new Credentials(cardNumber, pin);
+	}
+}
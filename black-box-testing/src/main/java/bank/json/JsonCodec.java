@@ -0,0 +1,170 @@
+package bank.json;
+
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+
+public class JsonCodec {
+	// The adapters keep no state, so one set serves every thread
+	private static final TransactionDataAdapter TRANSACTION_DATA = new TransactionDataAdapter();
+	private static final TransactionResultAdapter TRANSACTION_RESULT = new TransactionResultAdapter();
+	private static final CredentialsAdapter CREDENTIALS = new CredentialsAdapter();
+
+	public TransactionData readTransactionData(InputStream in) throws IOException {
+		JsonReader reader = reader(in);
+		try {
+			return TRANSACTION_DATA.read(reader);
+		} catch (IllegalStateException | NumberFormatException | MalformedJsonException | EOFException e) {
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	public List<TransactionData> readTransactionBatch(InputStream in) throws IOException {
+		JsonReader reader = reader(in);
+		try {
+			return readList(reader, TRANSACTION_DATA);
+		} catch (IllegalStateException | NumberFormatException | MalformedJsonException | EOFException e) {
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	public Credentials readCredentials(InputStream in) throws IOException {
+		JsonReader reader = reader(in);
+		try {
+			return CREDENTIALS.read(reader);
+		} catch (IllegalStateException | NumberFormatException | MalformedJsonException | EOFException e) {
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	public TransactionResult readTransactionResult(InputStream in) throws IOException {
+		JsonReader reader = reader(in);
+		try {
+			return TRANSACTION_RESULT.read(reader);
+		} catch (IllegalStateException | NumberFormatException | MalformedJsonException | EOFException e) {
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	public List<TransactionResult> readTransactionResults(InputStream in) throws IOException {
+		JsonReader reader = reader(in);
+		try {
+			return readList(reader, TRANSACTION_RESULT);
+		} catch (IllegalStateException | NumberFormatException | MalformedJsonException | EOFException e) {
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	public String readSessionToken(InputStream in) throws IOException {
+		JsonReader reader = reader(in);
+		try {
+			if (reader.peek() == JsonToken.NULL) {
+				reader.nextNull();
+				return null;
+			}
+			return reader.nextString();
+		} catch (IllegalStateException | MalformedJsonException | EOFException e) {
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	public void writeTransactionData(OutputStream out, TransactionData data) throws IOException {
+		JsonWriter writer = writer(out);
+		TRANSACTION_DATA.write(writer, data);
+		writer.flush();
+	}
+
+	public void writeTransactionBatch(OutputStream out, List<TransactionData> batch) throws IOException {
+		JsonWriter writer = writer(out);
+		writeList(writer, TRANSACTION_DATA, batch);
+		writer.flush();
+	}
+
+	public void writeCredentials(OutputStream out, Credentials credentials) throws IOException {
+		JsonWriter writer = writer(out);
+		CREDENTIALS.write(writer, credentials);
+		writer.flush();
+	}
+
+	public void writeTransactionResult(OutputStream out, TransactionResult result) throws IOException {
+		JsonWriter writer = writer(out);
+		TRANSACTION_RESULT.write(writer, result);
+		writer.flush();
+	}
+
+	public void writeTransactionResults(OutputStream out, List<TransactionResult> results) throws IOException {
+		JsonWriter writer = writer(out);
+		writeList(writer, TRANSACTION_RESULT, results);
+		writer.flush();
+	}
+
+	public void writeSessionToken(OutputStream out, String sessionToken) throws IOException {
+		JsonWriter writer = writer(out);
+		// A bare string or null is not a JSON document to a strict writer
+		writer.setLenient(true);
+		writer.value(sessionToken);
+		writer.flush();
+	}
+
+	static <E extends Enum<E>> E enumValue(Class<E> type, String name) {
+		try {
+			return Enum.valueOf(type, name);
+		} catch (IllegalArgumentException e) {
+			throw new JsonSyntaxException("Unknown " + type.getSimpleName() + ": " + name);
+		}
+	}
+
+	private static <T> List<T> readList(JsonReader reader, TypeAdapter<T> adapter) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		List<T> values = new ArrayList<>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			values.add(adapter.read(reader));
+		}
+		reader.endArray();
+		return values;
+	}
+
+	private static <T> void writeList(JsonWriter writer, TypeAdapter<T> adapter, List<T> values) throws IOException {
+		if (values == null) {
+			writer.nullValue();
+			return;
+		}
+		writer.beginArray();
+		for (T value : values) {
+			adapter.write(writer, value);
+		}
+		writer.endArray();
+	}
+
+	private static JsonReader reader(InputStream in) {
+		JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		// The old handlers parsed with Gson.fromJson, which is lenient too
+		reader.setLenient(true);
+		return reader;
+	}
+
+	private static JsonWriter writer(OutputStream out) {
+		return new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,113 @@
+package bank.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionType;
+
+public class TransactionDataAdapter extends TypeAdapter<TransactionData> {
+
+	@Override
+	public void write(JsonWriter out, TransactionData data) throws IOException {
+		if (data == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("cardNumber").value(data.getCardNumber());
+		if (data.getSessionToken() != null)
+			out.name("sessionToken").value(data.getSessionToken());
+		if (data.getPin() != null)
+			out.name("pin").value(String.valueOf(data.getPin()));
+		out.name("type").value(data.getType() == null ? null : data.getType().name());
+		out.name("accounts");
+		if (data.getAccounts() == null) {
+			out.nullValue();
+		} else {
+			out.beginArray();
+			for (AccountType account : data.getAccounts()) {
+				out.value(account == null ? null : account.name());
+			}
+			out.endArray();
+		}
+		out.name("amount").value(data.getAmount());
+		if (data.getIdempotencyKey() != null)
+			out.name("idempotencyKey").value(data.getIdempotencyKey());
+		out.endObject();
+	}
+
+	@Override
+	public TransactionData read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+
+		String cardNumber = null;
+		String sessionToken = null;
+		char[] pin = null;
+		TransactionType type = null;
+		AccountType[] accounts = null;
+		long amount = 0;
+		String idempotencyKey = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				continue;
+			}
+			if (name.equals("cardNumber")) {
+				cardNumber = in.nextString();
+			} else if (name.equals("sessionToken")) {
+				sessionToken = in.nextString();
+			} else if (name.equals("pin")) {
+				pin = in.nextString().toCharArray();
+			} else if (name.equals("type")) {
+				type = JsonCodec.enumValue(TransactionType.class, in.nextString());
+			} else if (name.equals("accounts")) {
+				accounts = readAccounts(in);
+			} else if (name.equals("amount")) {
+				amount = in.nextLong();
+			} else if (name.equals("idempotencyKey")) {
+				idempotencyKey = in.nextString();
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+
+		// A session token replaces the PIN
+		TransactionData data;
+		if (sessionToken != null)
+			data = new TransactionData(cardNumber, sessionToken, type, accounts, amount);
+		else
+			data = new TransactionData(cardNumber, pin, type, accounts, amount);
+		data.setIdempotencyKey(idempotencyKey);
+		return data;
+	}
+
+	private static AccountType[] readAccounts(JsonReader in) throws IOException {
+		List<AccountType> accounts = new ArrayList<>(2);
+		in.beginArray();
+		while (in.hasNext()) {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				accounts.add(null);
+			} else {
+				accounts.add(JsonCodec.enumValue(AccountType.class, in.nextString()));
+			}
+		}
+		in.endArray();
+		return accounts.toArray(new AccountType[0]);
+	}
+}
@@ -0,0 +1,86 @@
+package bank.json;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import bank.transactions.utils.TransactionResult;
+
+public class TransactionResultAdapter extends TypeAdapter<TransactionResult> {
+
+	@Override
+	public void write(JsonWriter out, TransactionResult result) throws IOException {
+		if (result == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("successful").value(result.isSuccessful());
+		out.name("reason").value(result.getReason());
+		out.name("fees").value(result.getFees());
+		out.name("accountBalances");
+		if (result.getAccountBalances() == null) {
+			out.nullValue();
+		} else {
+			out.beginArray();
+			for (long balance : result.getAccountBalances()) {
+				out.value(balance);
+			}
+			out.endArray();
+		}
+		out.endObject();
+	}
+
+	@Override
+	public TransactionResult read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+
+		boolean successful = false;
+		String reason = null;
+		long fees = 0;
+		long[] accountBalances = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				continue;
+			}
+			if (name.equals("successful")) {
+				successful = in.nextBoolean();
+			} else if (name.equals("reason")) {
+				reason = in.nextString();
+			} else if (name.equals("fees")) {
+				fees = in.nextLong();
+			} else if (name.equals("accountBalances")) {
+				accountBalances = readBalances(in);
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+
+		return new TransactionResult(successful, reason, fees, accountBalances);
+	}
+
+	private static long[] readBalances(JsonReader in) throws IOException {
+		long[] balances = new long[2];
+		int count = 0;
+		in.beginArray();
+		while (in.hasNext()) {
+			if (count == balances.length)
+				balances = Arrays.copyOf(balances, count * 2);
+			balances[count++] = in.nextLong();
+		}
+		in.endArray();
+		return count == balances.length ? balances : Arrays.copyOf(balances, count);
+	}
+}
@@ -0,0 +1,82 @@
+package bank.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and latency histograms with one label each, written out in the Prometheus text format.
+// Look a metric up once and keep it, recording on the handle never touches the registry
+public class MetricsRegistry {
+	private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+	public static MetricsRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	public LongAdder counter(String name, String help, String label, String value) {
+		return (LongAdder) family(name, help, "counter", label).metrics.computeIfAbsent(value, v -> new LongAdder());
+	}
+
+	public LatencyHistogram histogram(String name, String help, String label, String value) {
+		return (LatencyHistogram) family(name, help, "summary", label).metrics.computeIfAbsent(value,
+				v -> new LatencyHistogram());
+	}
+
+	public void writePrometheus(Writer out) throws IOException {
+		for (Family family : families.values()) {
+			out.write("# HELP " + family.name + " " + family.help + "\n");
+			out.write("# TYPE " + family.name + " " + family.type + "\n");
+			for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+				String labels = family.label + "=\"" + escape(metric.getKey()) + "\"";
+				if (metric.getValue() instanceof LongAdder) {
+					out.write(family.name + "{" + labels + "} " + ((LongAdder) metric.getValue()).sum() + "\n");
+					continue;
+				}
+				LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) metric.getValue()).snapshot();
+				for (double quantile : QUANTILES) {
+					out.write(family.name + "{" + labels + ",quantile=\"" + quantile + "\"} "
+							+ seconds(snapshot.percentileNanos(quantile)) + "\n");
+				}
+				out.write(family.name + "_sum{" + labels + "} " + seconds(snapshot.getSumNanos()) + "\n");
+				out.write(family.name + "_count{" + labels + "} " + snapshot.getCount() + "\n");
+			}
+		}
+		out.flush();
+	}
+
+	private Family family(String name, String help, String type, String label) {
+		Family family = families.computeIfAbsent(name, n -> new Family(name, help, type, label));
+		if (!family.type.equals(type) || !family.label.equals(label))
+			throw new IllegalArgumentException(name + " is already registered as a " + family.type + " by "
+					+ family.label);
+		return family;
+	}
+
+	private static String seconds(long nanos) {
+		return Double.toString(nanos / 1e9);
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static class Family {
+		private String name;
+		private String help;
+		private String type;
+		private String label;
+		private Map<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+		public Family(String name, String help, String type, String label) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+			this.label = label;
+		}
+	}
+}
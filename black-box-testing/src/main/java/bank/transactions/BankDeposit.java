@@ -1,7 +1,6 @@
 package bank.transactions;
 
-import bank.db.DBHandler;
-import bank.exceptions.CardNotFoundException;
+import bank.db.CardContext;
 import bank.exceptions.UnsuccessfulBalanceUpdate;
 import bank.exceptions.UserNotFoundException;
 import bank.transactions.utils.AccountType;
@@ -11,40 +10,33 @@ import bank.utils.FeesCalculator;
 
 public class BankDeposit extends BankTransaction {
 
-	public BankDeposit(FeesCalculator feesCalculator, DBHandler dbHandler) {
-		super(feesCalculator, dbHandler);
+	public BankDeposit(FeesCalculator feesCalculator) {
+		super(feesCalculator);
 	}
 
 	@Override
-	public TransactionResult perform(TransactionData data) {
-		String cardNumber = data.getCardNumber();
+	public TransactionResult perform(TransactionData data, CardContext context) {
 		AccountType to = data.getAccounts()[0];
-		double amount = data.getAmount();
+		long amount = data.getAmount();
 		
-		String user;
 		boolean isStudent;
+		long balance;
 		try {
-			user = dbHandler.getCardOwner(cardNumber);
-		} catch (CardNotFoundException e) {
-			return new TransactionResult(false, "Card number not found.", 0.0, null);
-		}
-		double balance;
-		try {
-			balance = dbHandler.getBalance(user, to);
-			isStudent = dbHandler.isStudent(user);
+			balance = context.getBalance(to);
+			isStudent = context.isStudent();
 		} catch (UserNotFoundException e) {
-			return new TransactionResult(false, "User not found.", 0.0, null);
+			return new TransactionResult(false, "User not found.", 0, null);
 		}
 		
-		double interest = feesCalculator.calculateDepositInterest(amount, balance, isStudent);
-		double newAmount = balance + amount + interest;
+		long interest = feesCalculator.calculateDepositInterestCents(amount, balance, isStudent);
+		long newAmount = balance + amount + interest;
 		try {
-			dbHandler.setBalance(user, to, newAmount);
+			context.updateBalance(to, newAmount);
 		} catch (UnsuccessfulBalanceUpdate e) {
-			return new TransactionResult(false, "Unsuccessful update of account balance.", 0.0, null);
+			return new TransactionResult(false, "Unsuccessful update of account balance.", 0, null);
 		} 
 		
-		double[] accountsBalances = new double[1];
+		long[] accountsBalances = new long[1];
 		accountsBalances[0] = newAmount;
 		return new TransactionResult(true, "", interest, accountsBalances);
 	}
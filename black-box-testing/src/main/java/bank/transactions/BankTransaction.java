@@ -1,6 +1,6 @@
 package bank.transactions;
 
-import bank.db.DBHandler;
+import bank.db.CardContext;
 import bank.transactions.utils.TransactionData;
 import bank.transactions.utils.TransactionResult;
 import bank.utils.FeesCalculator;
@@ -8,15 +8,13 @@ import bank.utils.FeesCalculator;
 public abstract class BankTransaction {
 	
 	protected FeesCalculator feesCalculator;
-	protected DBHandler dbHandler;
 	
 	
 
-	public BankTransaction(FeesCalculator feesCalculator, DBHandler dbHandler) {
+	public BankTransaction(FeesCalculator feesCalculator) {
 		super();
 		this.feesCalculator = feesCalculator;
-		this.dbHandler = dbHandler;
 	}
 	
-	abstract public TransactionResult perform(TransactionData data);
+	abstract public TransactionResult perform(TransactionData data, CardContext context);
 }
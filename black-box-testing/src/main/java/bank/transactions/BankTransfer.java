@@ -1,7 +1,6 @@
 package bank.transactions;
 
-import bank.db.DBHandler;
-import bank.exceptions.CardNotFoundException;
+import bank.db.CardContext;
 import bank.exceptions.UnsuccessfulBalanceUpdate;
 import bank.exceptions.UserNotFoundException;
 import bank.transactions.utils.AccountType;
@@ -11,54 +10,46 @@ import bank.utils.FeesCalculator;
 
 public class BankTransfer extends BankTransaction {
 
-	public BankTransfer(FeesCalculator feesCalculator, DBHandler dbHandler) {
-		super(feesCalculator, dbHandler);
+	public BankTransfer(FeesCalculator feesCalculator) {
+		super(feesCalculator);
 	}
 
 	@Override
-	public TransactionResult perform(TransactionData data) {
+	public TransactionResult perform(TransactionData data, CardContext context) {
 		TransactionResult result;
 		
-		String cardNumber = data.getCardNumber();
 		AccountType from = data.getAccounts()[0];
 		AccountType to = data.getAccounts()[1];
-		double amount = data.getAmount();
+		long amount = data.getAmount();
 		
-		String user;
-		try {
-			user = dbHandler.getCardOwner(cardNumber);
-		} catch (CardNotFoundException e) {
-			return new TransactionResult(false, "Card number not found.", 0.0, null);
-		}
-		
-		double fromBalance, toBalance;
+		long fromBalance, toBalance;
 		boolean isStudent;
 		try {
-			fromBalance = dbHandler.getBalance(user, from);
-			toBalance = dbHandler.getBalance(user, to);
-			isStudent = dbHandler.isStudent(user);
+			fromBalance = context.getBalance(from);
+			toBalance = context.getBalance(to);
+			isStudent = context.isStudent();
 		} catch (UserNotFoundException e) {
-			return new TransactionResult(false, "User not found.", 0.0, null);
+			return new TransactionResult(false, "User not found.", 0, null);
 		}
 		
-		double fees = feesCalculator.calculateTransferFee(amount, fromBalance, toBalance, isStudent);
-		double amountRequired = amount + fees;
-		double newFromAmount = fromBalance - amountRequired;
-		double newToAmount = toBalance + amount;
+		long fees = feesCalculator.calculateTransferFeeCents(amount, fromBalance, toBalance, isStudent);
+		long amountRequired = amount + fees;
+		long newFromAmount = fromBalance - amountRequired;
+		long newToAmount = toBalance + amount;
 		if (newFromAmount >= 0) {
 			try {
-				dbHandler.setBalance(user, from, newFromAmount);
-				dbHandler.setBalance(user, to, newToAmount);
+				context.updateBalance(from, newFromAmount);
+				context.updateBalance(to, newToAmount);
 			} catch (UnsuccessfulBalanceUpdate e) {
-				return new TransactionResult(false, "User not found.", 0.0, null);
+				return new TransactionResult(false, "User not found.", 0, null);
 			}
 			
-			double[] accountsBalances = new double[2];
+			long[] accountsBalances = new long[2];
 			accountsBalances[0] = newFromAmount;
 			accountsBalances[1] = newToAmount;
 			result = new TransactionResult(true, "", fees, accountsBalances);
 		} else {
-			result = new TransactionResult(false, "Insufficient funds.", 0.0, null);
+			result = new TransactionResult(false, "Insufficient funds.", 0, null);
 		}
 		
 		return result;
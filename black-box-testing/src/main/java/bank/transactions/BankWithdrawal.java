@@ -2,8 +2,7 @@ package bank.transactions;
 
 import java.util.Calendar;
 
-import bank.db.DBHandler;
-import bank.exceptions.CardNotFoundException;
+import bank.db.CardContext;
 import bank.exceptions.UnsuccessfulBalanceUpdate;
 import bank.exceptions.UserNotFoundException;
 import bank.transactions.utils.AccountType;
@@ -13,49 +12,42 @@ import bank.utils.FeesCalculator;
 
 public class BankWithdrawal extends BankTransaction {
 
-	public BankWithdrawal(FeesCalculator feesCalculator, DBHandler dbHandler) {
-		super(feesCalculator, dbHandler);
+	public BankWithdrawal(FeesCalculator feesCalculator) {
+		super(feesCalculator);
 	}
 
 	@Override
-	public TransactionResult perform(TransactionData data) {
-		String cardNumber = data.getCardNumber();
+	public TransactionResult perform(TransactionData data, CardContext context) {
 		AccountType from = data.getAccounts()[0];
-		double amount = data.getAmount();
+		long amount = data.getAmount();
 		int dayOfWeek = Calendar.getInstance().get(Calendar.DAY_OF_WEEK);
 		
-		String user;
 		boolean isStudent;
+		long balance;
 		try {
-			user = dbHandler.getCardOwner(cardNumber);
-		} catch (CardNotFoundException e) {
-			return new TransactionResult(false, "Card number not found.", 0.0, null);
-		}
-		double balance;
-		try {
-			balance = dbHandler.getBalance(user, from);
-			isStudent = dbHandler.isStudent(user);
+			balance = context.getBalance(from);
+			isStudent = context.isStudent();
 		} catch (UserNotFoundException e) {
-			return new TransactionResult(false, "User not found.", 0.0, null);
+			return new TransactionResult(false, "User not found.", 0, null);
 		}
 		
-		double fees = feesCalculator.calculateWithdrawalFee(amount, balance, isStudent, dayOfWeek);
+		long fees = feesCalculator.calculateWithdrawalFeeCents(amount, balance, isStudent, dayOfWeek);
 		
-		double amountRequired = amount + fees;
+		long amountRequired = amount + fees;
 		
 		TransactionResult result;
-		double newAmount = balance - amountRequired;
+		long newAmount = balance - amountRequired;
 		if (newAmount >= 0) {
 			try {
-				dbHandler.setBalance(user, from, balance - amountRequired);
+				context.updateBalance(from, newAmount);
 			} catch (UnsuccessfulBalanceUpdate e) {
-				return new TransactionResult(false, "Unsuccessful update of account balance.", 0.0, null);
+				return new TransactionResult(false, "Unsuccessful update of account balance.", 0, null);
 			}
-			double[] accountsBalances = new double[1];
+			long[] accountsBalances = new long[1];
 			accountsBalances[0] = newAmount;
 			result = new TransactionResult(true, "", fees, accountsBalances);
 		} else {
-			result = new TransactionResult(false, "Insufficient funds.", 0.0, null);
+			result = new TransactionResult(false, "Insufficient funds.", 0, null);
 		}
 		
 		return result;
@@ -0,0 +1,53 @@
+package bank.transactions.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+public class Money {
+	public static final long CENTS_PER_UNIT = 100;
+	public static final long BASIS_POINTS = 10000;
+
+	public static long ofWhole(long units) {
+		return Math.multiplyExact(units, CENTS_PER_UNIT);
+	}
+
+	public static long fromDouble(double amount) {
+		// Goes through the shortest decimal form, so 791.485 is rounded as written rather than as stored
+		return BigDecimal.valueOf(amount).movePointRight(2).setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+	}
+
+	public static double toDouble(long cents) {
+		return cents / (double) CENTS_PER_UNIT;
+	}
+
+	public static long applyRate(long cents, long basisPoints) {
+		// Fees and interest round half to even, to the cent
+		return divideHalfEven(Math.multiplyExact(cents, basisPoints), BASIS_POINTS);
+	}
+
+	public static String format(long cents) {
+		StringBuilder text = new StringBuilder();
+		if (cents < 0)
+			text.append('-');
+		long abs = Math.abs(cents);
+		text.append(abs / CENTS_PER_UNIT).append('.');
+		long fraction = abs % CENTS_PER_UNIT;
+		if (fraction < 10)
+			text.append('0');
+		text.append(fraction);
+		return text.toString();
+	}
+
+	static long divideHalfEven(long dividend, long divisor) {
+		long quotient = dividend / divisor;
+		long remainder = dividend % divisor;
+		if (remainder == 0)
+			return quotient;
+
+		long twice = Math.abs(remainder) * 2;
+		long sign = (dividend < 0) == (divisor < 0) ? 1 : -1;
+		if (twice > Math.abs(divisor) || (twice == Math.abs(divisor) && (quotient & 1) != 0))
+			return quotient + sign;
+		return quotient;
+	}
+}
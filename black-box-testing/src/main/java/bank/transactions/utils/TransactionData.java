@@ -3,11 +3,13 @@ package bank.transactions.utils;
 public class TransactionData {
 	private String cardNumber;
 	private char[] pin;
+	private String sessionToken;
 	private TransactionType type;
 	private AccountType[] accounts;
-	private double amount;
+	private long amount;
+	private String idempotencyKey;
 	
-	public TransactionData(String cardNumber, char[] pin, TransactionType type, AccountType[] accounts, double amount) {
+	public TransactionData(String cardNumber, char[] pin, TransactionType type, AccountType[] accounts, long amount) {
 		super();
 		this.cardNumber = cardNumber;
 		this.pin = pin;
@@ -16,6 +18,16 @@ public class TransactionData {
 		this.amount = amount;
 	}
 
+	public TransactionData(String cardNumber, String sessionToken, TransactionType type, AccountType[] accounts,
+			long amount) {
+		super();
+		this.cardNumber = cardNumber;
+		this.sessionToken = sessionToken;
+		this.type = type;
+		this.accounts = accounts;
+		this.amount = amount;
+	}
+
 	public String getCardNumber() {
 		return cardNumber;
 	}
@@ -24,6 +36,10 @@ public class TransactionData {
 		return pin;
 	}
 
+	public String getSessionToken() {
+		return sessionToken;
+	}
+
 	public TransactionType getType() {
 		return type;
 	}
@@ -32,8 +48,32 @@ public class TransactionData {
 		return accounts;
 	}
 	
-	public double getAmount() {
+	// In cents
+	public long getAmount() {
 		return amount;
 	}
 
+	// Chosen by the client and kept across retries, the bank performs a key at most once
+	public String getIdempotencyKey() {
+		return idempotencyKey;
+	}
+
+	public void setIdempotencyKey(String idempotencyKey) {
+		this.idempotencyKey = idempotencyKey;
+	}
+
+	// A type and an account for every side of it, a transfer needs both
+	public boolean isComplete() {
+		if (type == null || accounts == null)
+			return false;
+		int needed = type == TransactionType.Transfer ? 2 : 1;
+		if (accounts.length < needed)
+			return false;
+		for (int i = 0; i < needed; i++) {
+			if (accounts[i] == null)
+				return false;
+		}
+		return true;
+	}
+
 }
@@ -1,15 +1,12 @@
 package bank.transactions.utils;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class TransactionResult {
 	private boolean successful;
 	private String reason;
-	private double fees;
-	private double[] accountBalances;
+	private long fees;
+	private long[] accountBalances;
 	
-	public TransactionResult(boolean successful, String reason, double fees, double[] accountBalances) {
+	public TransactionResult(boolean successful, String reason, long fees, long[] accountBalances) {
 		super();
 		this.successful = successful;
 		this.reason = reason;
@@ -25,11 +22,13 @@ public class TransactionResult {
 		return reason;
 	}
 
-	public double getFees() {
+	// In cents
+	public long getFees() {
 		return fees;
 	}
 
-	public double[] getAccountBalances() {
+	// In cents
+	public long[] getAccountBalances() {
 		return accountBalances;
 	}
 }
\ No newline at end of file
@@ -2,145 +2,126 @@ package bank.utils;
 
 import java.util.Calendar;
 
+import bank.transactions.utils.Money;
+
 public class FeesCalculator {
+	// Thresholds in cents, the double variants compare against the same values in dollars
+	private static final long LOW_BALANCE = 100000L;
+	private static final long HIGH_BALANCE = 1000000L;
+	private static final long SMALL_TRANSFER = 10000L;
+
+	// Indexed by student << 3 | weekend << 2 | balance under 1000 << 1 | balance under 10000
+	private static final long[] WITHDRAWAL_RATES = {
+			0, 10, 20, 20, // not a student, weekday
+			0, 10, 20, 20, // not a student, weekend
+			10, 10, 10, 10, // student, weekday
+			0, 0, 0, 0 // student, weekend
+	};
+
+	// A deposit's rule is student << 1 | amount over the threshold, it picks the balance threshold and
+	// the pair of rates below
+	private static final long[] DEPOSIT_AMOUNTS = { 50000L, 10000L };
+	private static final long[] DEPOSIT_BALANCES = { 1000000L, 500000L, 500000L, 100000L };
+	private static final double[] DEPOSIT_AMOUNTS_DOLLARS = { 500.00, 100.00 };
+	private static final double[] DEPOSIT_BALANCES_DOLLARS = { 10000.00, 5000.00, 5000.00, 1000.00 };
+	// Indexed by rule << 1 | balance over the rule's threshold
+	private static final long[] DEPOSIT_RATES = {
+			0, 50, // not a student, amount up to 500
+			50, 100, // not a student, amount over 500
+			20, 50, // student, amount up to 100
+			50, 100 // student, amount over 100
+	};
+
+	// Indexed by student << 3 | amount under 100 << 2 | from under 1000 << 1 | to under 1000
+	private static final long[] TRANSFER_RATES = {
+			550, 500, 50, 100, // not a student, amount of 100 or more
+			500, 1000, 100, 200, // not a student, amount under 100
+			125, 250, 25, 50, // student, amount of 100 or more
+			250, 500, 50, 100 // student, amount under 100
+	};
+
 	public double calculateWithdrawalFee(double amount, double accountBalance, boolean student, int dayOfWeek) {
 		// Calculate fee percentage
-		double feePercentage;
-		// Check if student
-		if (student) {
-			// Check if it's weekend
-			if ((dayOfWeek == Calendar.SATURDAY) || (dayOfWeek == Calendar.SUNDAY)) {
-				feePercentage = 0.0;
-			} else {
-				feePercentage = 0.001;
-			}
-		} else {
-			if (accountBalance < 1000.00) {
-				feePercentage = 0.002;
-			} else if (accountBalance < 10000.00) {
-				feePercentage = 0.001;
-			} else {
-				feePercentage = 0.0;
-			}
-		}
-		
+		long feeRate = withdrawalFeeRate(student, isWeekend(dayOfWeek), accountBalance < LOW_BALANCE / 100.0,
+				accountBalance < HIGH_BALANCE / 100.0);
+
 		// Calculate fee
-		double fee = amount * feePercentage;
-		
+		double fee = amount * toPercentage(feeRate);
+
 		return fee;
 	}
-	
+
+	public long calculateWithdrawalFeeCents(long amount, long accountBalance, boolean student, int dayOfWeek) {
+		long feeRate = withdrawalFeeRate(student, isWeekend(dayOfWeek), accountBalance < LOW_BALANCE,
+				accountBalance < HIGH_BALANCE);
+
+		return Money.applyRate(amount, feeRate);
+	}
+
 	public double calculateDepositInterest(double amount, double accountBalance, boolean student) {
 		// Calculate interest percentage
-		double interestPercentage;
-		// Check if student
-		if (student) {
-			// Check amount deposited
-			if (amount > 100.00) {
-				// Check balance
-				if (accountBalance > 1000.00) {
-					interestPercentage = 0.01;
-				} else {
-					interestPercentage = 0.005;
-				}
-			} else {
-				if (accountBalance > 5000.00) {
-					interestPercentage = 0.005;
-				} else {
-					interestPercentage = 0.002;
-				}
-			}
-		} else {
-			if (amount > 500.00) {
-				if (accountBalance > 5000.00) {
-					interestPercentage = 0.01;
-				} else {
-					interestPercentage = 0.005;
-				}
-			} else {
-				if (accountBalance > 10000.00) {
-					interestPercentage = 0.005;
-				} else {
-					interestPercentage = 0.0;
-				}
-			}
-		}
-		
+		int rule = bit(student) << 1 | bit(amount > DEPOSIT_AMOUNTS_DOLLARS[bit(student)]);
+		long interestRate = depositInterestRate(rule, accountBalance > DEPOSIT_BALANCES_DOLLARS[rule]);
+
 		// Calculate interest
-		double interest = amount * interestPercentage;
-		
+		double interest = amount * toPercentage(interestRate);
+
 		return interest;
 	}
-	
+
+	public long calculateDepositInterestCents(long amount, long accountBalance, boolean student) {
+		int rule = bit(student) << 1 | bit(amount > DEPOSIT_AMOUNTS[bit(student)]);
+		long interestRate = depositInterestRate(rule, accountBalance > DEPOSIT_BALANCES[rule]);
+
+		return Money.applyRate(amount, interestRate);
+	}
+
 	public double calculateTransferFee(double amount, double fromAccountBalance, double toAccountBalance, boolean student) {
 		// Calculate fee percentage
-		double feePercentage;
-		// Check if student
-		if (student) {
-			if (amount < 100.00) {
-				if (fromAccountBalance < 1000.00) {
-					if (toAccountBalance < 1000.00) {
-						feePercentage = 0.01;
-					} else {
-						feePercentage = 0.005;
-					}
-				} else {
-					if (toAccountBalance < 1000.00) {
-						feePercentage = 0.05;
-					} else {
-						feePercentage = 0.025;
-					}
-				}
-			} else {
-				if (fromAccountBalance < 1000.00) {
-					if (toAccountBalance < 1000.00) {
-						feePercentage = 0.005;
-					} else {
-						feePercentage = 0.0025;
-					}
-				} else {
-					if (toAccountBalance < 1000.00) {
-						feePercentage = 0.025;
-					} else {
-						feePercentage = 0.0125;
-					}
-				}
-			}
-		} else {
-			if (amount < 100.00) {
-				if (fromAccountBalance < 1000.00) {
-					if (toAccountBalance < 1000.00) {
-						feePercentage = 0.02;
-					} else {
-						feePercentage = 0.01;
-					}
-				} else {
-					if (toAccountBalance < 1000.00) {
-						feePercentage = 0.1;
-					} else {
-						feePercentage = 0.05;
-					}
-				}
-			} else {
-				if (fromAccountBalance < 1000.00) {
-					if (toAccountBalance < 1000.00) {
-						feePercentage = 0.01;
-					} else {
-						feePercentage = 0.005;
-					}
-				} else {
-					if (toAccountBalance < 1000.00) {
-						feePercentage = 0.05;
-					} else {
-						feePercentage = 0.055;
-					}
-				}
-			}
-		}
-		
+		long feeRate = transferFeeRate(student, amount < SMALL_TRANSFER / 100.0,
+				fromAccountBalance < LOW_BALANCE / 100.0, toAccountBalance < LOW_BALANCE / 100.0);
+
 		// Calculate fee
-		double fee = amount * feePercentage;
-		
+		double fee = amount * toPercentage(feeRate);
+
 		return fee;
 	}
+
+	public long calculateTransferFeeCents(long amount, long fromAccountBalance, long toAccountBalance, boolean student) {
+		long feeRate = transferFeeRate(student, amount < SMALL_TRANSFER, fromAccountBalance < LOW_BALANCE,
+				toAccountBalance < LOW_BALANCE);
+
+		return Money.applyRate(amount, feeRate);
+	}
+
+	// Rates are in basis points, the double and cents variants only differ in how they compare to the thresholds.
+	// Each rule is a table indexed by the bits of its comparisons, so a call is a few compares and one load
+	private long withdrawalFeeRate(boolean student, boolean weekend, boolean balanceUnder1000,
+			boolean balanceUnder10000) {
+		return WITHDRAWAL_RATES[bit(student) << 3 | bit(weekend) << 2 | bit(balanceUnder1000) << 1
+				| bit(balanceUnder10000)];
+	}
+
+	private long depositInterestRate(int rule, boolean balanceOver) {
+		return DEPOSIT_RATES[rule << 1 | bit(balanceOver)];
+	}
+
+	private long transferFeeRate(boolean student, boolean amountUnder100, boolean fromUnder1000,
+			boolean toUnder1000) {
+		return TRANSFER_RATES[bit(student) << 3 | bit(amountUnder100) << 2 | bit(fromUnder1000) << 1
+				| bit(toUnder1000)];
+	}
+
+	private static int bit(boolean condition) {
+		return condition ? 1 : 0;
+	}
+
+	private static boolean isWeekend(int dayOfWeek) {
+		return (dayOfWeek == Calendar.SATURDAY) || (dayOfWeek == Calendar.SUNDAY);
+	}
+
+	private static double toPercentage(long basisPoints) {
+		// Correctly rounded, so 10 / 10000.0 is the same double as the literal 0.001
+		return basisPoints / (double) Money.BASIS_POINTS;
+	}
 }
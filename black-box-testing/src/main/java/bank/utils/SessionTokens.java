@@ -0,0 +1,84 @@
+package bank.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public class SessionTokens {
+	public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+
+	private static final String ALGORITHM = "HmacSHA256";
+	private static final int KEY_SIZE = 32;
+
+	private SecretKeySpec key;
+	private long ttlMillis;
+	// Mac instances are not thread safe and are costly to create
+	private ThreadLocal<Mac> macs;
+
+	public SessionTokens() {
+		this(randomKey(), DEFAULT_TTL_MILLIS);
+	}
+
+	public SessionTokens(byte[] key, long ttlMillis) {
+		super();
+		this.key = new SecretKeySpec(key.clone(), ALGORITHM);
+		this.ttlMillis = ttlMillis;
+		this.macs = new ThreadLocal<>();
+	}
+
+	public String issue(String cardNumber) {
+		// card.expiry.signature, the card number and expiry are readable but cannot be changed
+		String payload = cardNumber + "." + Long.toHexString(System.currentTimeMillis() + ttlMillis);
+		return payload + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(payload));
+	}
+
+	public boolean isValid(String token, String cardNumber) {
+		if (token == null || cardNumber == null)
+			return false;
+		int signatureStart = token.lastIndexOf('.');
+		int expiryStart = token.lastIndexOf('.', signatureStart - 1);
+		if (expiryStart < 0)
+			return false;
+
+		String payload = token.substring(0, signatureStart);
+		byte[] signature;
+		long expiry;
+		try {
+			signature = Base64.getUrlDecoder().decode(token.substring(signatureStart + 1));
+			expiry = Long.parseLong(token.substring(expiryStart + 1, signatureStart), 16);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+
+		// Constant time, so a forged signature cannot be guessed byte by byte
+		boolean signed = MessageDigest.isEqual(sign(payload), signature);
+		boolean sameCard = token.substring(0, expiryStart).equals(cardNumber);
+		return signed && sameCard && System.currentTimeMillis() < expiry;
+	}
+
+	private byte[] sign(String payload) {
+		Mac mac = macs.get();
+		try {
+			if (mac == null) {
+				mac = Mac.getInstance(ALGORITHM);
+				mac.init(key);
+				macs.set(mac);
+			}
+		} catch (GeneralSecurityException e) {
+			// Every Java platform is required to support HmacSHA256
+			throw new IllegalStateException(e);
+		}
+		return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static byte[] randomKey() {
+		byte[] key = new byte[KEY_SIZE];
+		new SecureRandom().nextBytes(key);
+		return key;
+	}
+}
@@ -0,0 +1,243 @@
+package bank.wire;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import bank.exceptions.WireFormatException;
+import bank.json.Credentials;
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+import bank.transactions.utils.TransactionType;
+
+// Frames are an int length followed by the payload, every payload starts with an opcode byte
+public class WireCodec {
+	public static final byte CHECK_CREDENTIALS = 1;
+	public static final byte PERFORM_TRANSACTION = 2;
+	public static final byte SESSION_TOKEN = 3;
+	public static final byte TRANSACTION_RESULT = 4;
+
+	public static final int LENGTH_PREFIX = 4;
+	// Anything bigger is not a message from an ATM
+	public static final int MAX_FRAME = 1024;
+
+	private static final byte NONE = -1;
+	private static final byte WITH_PIN = 0;
+	private static final byte WITH_TOKEN = 1;
+	private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+	private static final AccountType[] ACCOUNT_TYPES = AccountType.values();
+
+	private WireCodec() {
+	}
+
+	// Returns the length of the payload of the frame at the start of the buffer, or -1 while it is incomplete
+	public static int frameLength(ByteBuffer buffer) throws WireFormatException {
+		if (buffer.remaining() < LENGTH_PREFIX)
+			return -1;
+		int length = buffer.getInt(buffer.position());
+		if (length < 1 || length > MAX_FRAME - LENGTH_PREFIX)
+			throw new WireFormatException("Bad frame length " + length);
+		return buffer.remaining() - LENGTH_PREFIX < length ? -1 : length;
+	}
+
+	public static void writeCredentials(ByteBuffer buffer, String cardNumber, char[] pin) {
+		int start = beginFrame(buffer, CHECK_CREDENTIALS);
+		putString(buffer, cardNumber);
+		putChars(buffer, pin);
+		endFrame(buffer, start);
+	}
+
+	public static void writeTransaction(ByteBuffer buffer, TransactionData data) {
+		int start = beginFrame(buffer, PERFORM_TRANSACTION);
+		putString(buffer, data.getCardNumber());
+		if (data.getSessionToken() != null) {
+			buffer.put(WITH_TOKEN);
+			putString(buffer, data.getSessionToken());
+		} else {
+			buffer.put(WITH_PIN);
+			putChars(buffer, data.getPin());
+		}
+		buffer.put(data.getType() == null ? NONE : (byte) data.getType().ordinal());
+		AccountType[] accounts = data.getAccounts();
+		buffer.put(accounts == null ? NONE : (byte) accounts.length);
+		if (accounts != null) {
+			for (AccountType account : accounts) {
+				buffer.put(account == null ? NONE : (byte) account.ordinal());
+			}
+		}
+		buffer.putLong(data.getAmount());
+		// Optional, it ends the frame when present
+		if (data.getIdempotencyKey() != null)
+			putString(buffer, data.getIdempotencyKey());
+		endFrame(buffer, start);
+	}
+
+	public static void writeSessionToken(ByteBuffer buffer, String sessionToken) {
+		int start = beginFrame(buffer, SESSION_TOKEN);
+		putString(buffer, sessionToken);
+		endFrame(buffer, start);
+	}
+
+	public static void writeResult(ByteBuffer buffer, TransactionResult result) {
+		int start = beginFrame(buffer, TRANSACTION_RESULT);
+		buffer.put(result.isSuccessful() ? (byte) 1 : (byte) 0);
+		putString(buffer, result.getReason());
+		buffer.putLong(result.getFees());
+		long[] balances = result.getAccountBalances();
+		buffer.put(balances == null ? NONE : (byte) balances.length);
+		if (balances != null) {
+			for (long balance : balances) {
+				buffer.putLong(balance);
+			}
+		}
+		endFrame(buffer, start);
+	}
+
+	// Consumes the length prefix and returns the opcode, the payload follows in the buffer
+	public static byte readOpcode(ByteBuffer buffer) {
+		buffer.getInt();
+		return buffer.get();
+	}
+
+	public static Credentials readCredentials(ByteBuffer buffer) throws WireFormatException {
+		try {
+			return new Credentials(getString(buffer), getChars(buffer));
+		} catch (BufferUnderflowException e) {
+			throw new WireFormatException("Truncated credentials");
+		}
+	}
+
+	public static TransactionData readTransaction(ByteBuffer buffer) throws WireFormatException {
+		try {
+			String cardNumber = getString(buffer);
+			byte auth = buffer.get();
+			String sessionToken = null;
+			char[] pin = null;
+			if (auth == WITH_TOKEN)
+				sessionToken = getString(buffer);
+			else if (auth == WITH_PIN)
+				pin = getChars(buffer);
+			else
+				throw new WireFormatException("Unknown credentials kind " + auth);
+
+			byte type = buffer.get();
+			int accountCount = buffer.get();
+			AccountType[] accounts = null;
+			if (accountCount >= 0) {
+				accounts = new AccountType[accountCount];
+				for (int i = 0; i < accountCount; i++) {
+					accounts[i] = element(ACCOUNT_TYPES, buffer.get());
+				}
+			}
+			long amount = buffer.getLong();
+			// Frames without an idempotency key end here
+			String idempotencyKey = buffer.hasRemaining() ? getString(buffer) : null;
+
+			TransactionData data;
+			if (sessionToken != null)
+				data = new TransactionData(cardNumber, sessionToken, element(TRANSACTION_TYPES, type), accounts, amount);
+			else
+				data = new TransactionData(cardNumber, pin, element(TRANSACTION_TYPES, type), accounts, amount);
+			data.setIdempotencyKey(idempotencyKey);
+			if (!data.isComplete())
+				throw new WireFormatException("Transaction without a type or its accounts");
+			return data;
+		} catch (BufferUnderflowException e) {
+			throw new WireFormatException("Truncated transaction");
+		}
+	}
+
+	public static String readSessionToken(ByteBuffer buffer) throws WireFormatException {
+		try {
+			return getString(buffer);
+		} catch (BufferUnderflowException e) {
+			throw new WireFormatException("Truncated session token");
+		}
+	}
+
+	public static TransactionResult readResult(ByteBuffer buffer) throws WireFormatException {
+		try {
+			boolean successful = buffer.get() == 1;
+			String reason = getString(buffer);
+			long fees = buffer.getLong();
+			int balanceCount = buffer.get();
+			long[] balances = null;
+			if (balanceCount >= 0) {
+				balances = new long[balanceCount];
+				for (int i = 0; i < balanceCount; i++) {
+					balances[i] = buffer.getLong();
+				}
+			}
+			return new TransactionResult(successful, reason, fees, balances);
+		} catch (BufferUnderflowException e) {
+			throw new WireFormatException("Truncated result");
+		}
+	}
+
+	private static int beginFrame(ByteBuffer buffer, byte opcode) {
+		int start = buffer.position();
+		buffer.putInt(0);
+		buffer.put(opcode);
+		return start;
+	}
+
+	private static void endFrame(ByteBuffer buffer, int start) {
+		buffer.putInt(start, buffer.position() - start - LENGTH_PREFIX);
+	}
+
+	// Strings are short, a length of -1 stands for null
+	private static void putString(ByteBuffer buffer, String value) {
+		if (value == null) {
+			buffer.putShort(NONE);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String getString(ByteBuffer buffer) throws WireFormatException {
+		int length = buffer.getShort();
+		if (length < 0)
+			return null;
+		if (length > buffer.remaining())
+			throw new WireFormatException("String longer than the frame");
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// The PIN stays a char array, it never becomes a String
+	private static void putChars(ByteBuffer buffer, char[] value) {
+		if (value == null) {
+			buffer.putShort(NONE);
+			return;
+		}
+		buffer.putShort((short) value.length);
+		for (char c : value) {
+			buffer.putChar(c);
+		}
+	}
+
+	private static char[] getChars(ByteBuffer buffer) throws WireFormatException {
+		int length = buffer.getShort();
+		if (length < 0)
+			return null;
+		if (length * 2 > buffer.remaining())
+			throw new WireFormatException("PIN longer than the frame");
+		char[] value = new char[length];
+		for (int i = 0; i < length; i++) {
+			value[i] = buffer.getChar();
+		}
+		return value;
+	}
+
+	private static <E> E element(E[] values, byte ordinal) throws WireFormatException {
+		if (ordinal == NONE)
+			return null;
+		if (ordinal < 0 || ordinal >= values.length)
+			throw new WireFormatException("Unknown ordinal " + ordinal);
+		return values[ordinal];
+	}
+}
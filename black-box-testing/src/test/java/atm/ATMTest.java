@@ -41,14 +41,14 @@ public class ATMTest {
     @Test
     public void checkCorrectPINTest() {
         // This test mocks a correct credential check for a 4-digit PIN
-        Mockito.when(dispatcher.checkCredentials(null, new char[]{'5', '5', '5', '5'})).thenReturn(true);
+        Mockito.when(dispatcher.login(null, new char[]{'5', '5', '5', '5'})).thenReturn("token");
         Assertions.assertDoesNotThrow(() -> atm.checkPin(new char[]{'5', '5', '5', '5'}));
     }
 
     @Test
     public void checkIncorrectPINTest() {
         // This test mocks a failed credential check
-        Mockito.when(dispatcher.checkCredentials(ArgumentMatchers.any(), ArgumentMatchers.any())).thenReturn(false);
+        Mockito.when(dispatcher.login(ArgumentMatchers.any(), ArgumentMatchers.any())).thenReturn(null);
         Assertions.assertThrows(InvalidCredentialsException.class, () -> atm.checkPin(new char[]{'5', '5', '5', '4'}));
     }
 
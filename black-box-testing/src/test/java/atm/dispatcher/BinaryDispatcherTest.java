@@ -0,0 +1,140 @@
+package atm.dispatcher;
+
+import atm.session.transactions.ATMDeposit;
+import atm.session.transactions.ATMWithdrawal;
+import bank.BankFacade;
+import bank.BinaryServer;
+import bank.db.DBHandler;
+import bank.exceptions.WireFormatException;
+import bank.transactions.BankDeposit;
+import bank.transactions.BankTransfer;
+import bank.transactions.BankWithdrawal;
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+import bank.transactions.utils.TransactionType;
+import bank.utils.FeesCalculator;
+import bank.wire.WireCodec;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryDispatcherTest {
+    private static final String CARD = "4000000000000000";
+
+    @TempDir
+    Path tempDir;
+
+    private DBHandler dbHandler;
+    private BinaryServer server;
+    private BinaryDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String url = "jdbc:sqlite:" + tempDir.resolve("bank-test.db");
+        dbHandler = new DBHandler(url, 2);
+        try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO clients VALUES ('ktsiounis', 'Kostas', 'Tsiounis', 0);");
+            stmt.execute("INSERT INTO cards VALUES ('" + CARD + "', 'ktsiounis', '5555');");
+            stmt.execute("INSERT INTO accounts VALUES ('ktsiounis', 0, 20000);");
+        }
+        FeesCalculator feesCalculator = new FeesCalculator();
+        BankFacade facade = new BankFacade(dbHandler, new BankWithdrawal(feesCalculator),
+                new BankDeposit(feesCalculator), new BankTransfer(feesCalculator));
+
+        server = new BinaryServer(facade, new InetSocketAddress("127.0.0.1", 0), 0);
+        server.start();
+        dispatcher = new BinaryDispatcher(server.getAddress());
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.close();
+        server.stop();
+        dbHandler.close();
+    }
+
+    @Test
+    @DisplayName("test 1: credentials, session token and transactions go over the binary connection")
+    void credentials_and_transactions() {
+        assertFalse(dispatcher.checkCredentials(CARD, "0000".toCharArray()));
+        assertNull(dispatcher.login(CARD, "0000".toCharArray()));
+
+        assertTrue(dispatcher.checkCredentials(CARD, "5555".toCharArray()));
+        String sessionToken = dispatcher.login(CARD, "5555".toCharArray());
+        assertNotNull(sessionToken);
+
+        ATMDeposit deposit = new ATMDeposit();
+        deposit.setToAccount(AccountType.Chequing);
+        deposit.setAmount(1000);
+        TransactionResult result = dispatcher.performTransaction(CARD, sessionToken, deposit);
+        assertTrue(result.isSuccessful());
+        assertEquals(21000, result.getAccountBalances()[0]);
+
+        ATMWithdrawal withdrawal = new ATMWithdrawal();
+        withdrawal.setFromAccount(AccountType.Chequing);
+        withdrawal.setAmount(1000000);
+        result = dispatcher.performTransaction(CARD, sessionToken, withdrawal);
+        assertFalse(result.isSuccessful());
+        assertEquals("Insufficient funds.", result.getReason());
+    }
+
+    @Test
+    @DisplayName("test 2: a transaction encodes to a few dozen bytes and decodes unchanged")
+    void compact_encoding() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(WireCodec.MAX_FRAME);
+        WireCodec.writeTransaction(buffer, new TransactionData(CARD, "5555".toCharArray(), TransactionType.Transfer,
+                new AccountType[]{AccountType.Chequing, AccountType.Savings}, 12345));
+        assertTrue(buffer.position() < 48);
+
+        buffer.flip();
+        assertEquals(buffer.remaining() - WireCodec.LENGTH_PREFIX, WireCodec.frameLength(buffer));
+        assertEquals(WireCodec.PERFORM_TRANSACTION, WireCodec.readOpcode(buffer));
+        TransactionData data = WireCodec.readTransaction(buffer);
+        assertEquals(CARD, data.getCardNumber());
+        assertArrayEquals("5555".toCharArray(), data.getPin());
+        assertEquals(TransactionType.Transfer, data.getType());
+        assertArrayEquals(new AccountType[]{AccountType.Chequing, AccountType.Savings}, data.getAccounts());
+        assertEquals(12345, data.getAmount());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    @DisplayName("test 3: a transaction frame without a type or its accounts drops only the connection that sent it")
+    void bad_frame_drops_its_connection() throws Exception {
+        ByteBuffer frame = ByteBuffer.allocate(WireCodec.MAX_FRAME);
+        WireCodec.writeTransaction(frame, new TransactionData(CARD, "5555".toCharArray(), null,
+                new AccountType[]{AccountType.Chequing}, 100));
+        frame.flip();
+        WireCodec.frameLength(frame);
+        frame.position(WireCodec.LENGTH_PREFIX);
+        WireCodec.readOpcode(frame);
+        assertThrows(WireFormatException.class, () -> WireCodec.readTransaction(frame));
+
+        ByteBuffer transfer = ByteBuffer.allocate(WireCodec.MAX_FRAME);
+        WireCodec.writeTransaction(transfer, new TransactionData(CARD, "5555".toCharArray(), TransactionType.Transfer,
+                new AccountType[]{AccountType.Chequing}, 100));
+        transfer.flip();
+        try (SocketChannel channel = SocketChannel.open(server.getAddress())) {
+            channel.write(transfer);
+            channel.socket().setSoTimeout(5000);
+            assertEquals(-1, channel.socket().getInputStream().read());
+        }
+
+        String sessionToken = dispatcher.login(CARD, "5555".toCharArray());
+        assertNotNull(sessionToken);
+        ATMDeposit deposit = new ATMDeposit();
+        deposit.setToAccount(AccountType.Chequing);
+        deposit.setAmount(1000);
+        assertTrue(dispatcher.performTransaction(CARD, sessionToken, deposit).isSuccessful());
+    }
+}
@@ -0,0 +1,65 @@
+package atm.dispatcher;
+
+import org.junit.jupiter.api.*;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    @Test
+    @DisplayName("test 1: the breaker opens after the failure threshold and rejects calls while open")
+    void opens_after_threshold() {
+        CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofMinutes(1));
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // A success resets the count
+        breaker.onSuccess();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    @DisplayName("test 2: after the open period a single probe goes through and decides the next state")
+    void half_open_probe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofMillis(20));
+        breaker.allowRequest();
+        breaker.onFailure();
+        assertFalse(breaker.allowRequest());
+
+        Thread.sleep(40);
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(40);
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    @DisplayName("test 3: backoff grows exponentially up to the cap and keeps half of it random")
+    void backoff_is_capped_with_jitter() {
+        RetryPolicy policy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofMillis(1000));
+        for (int i = 0; i < 100; i++) {
+            long first = policy.backoffMillis(1);
+            assertTrue(first >= 50 && first <= 100, "first retry " + first);
+            long third = policy.backoffMillis(3);
+            assertTrue(third >= 200 && third <= 400, "third retry " + third);
+            long late = policy.backoffMillis(40);
+            assertTrue(late >= 500 && late <= 1000, "late retry " + late);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package atm.dispatcher;
+
+import atm.session.transactions.ATMDeposit;
+import bank.BankFacade;
+import bank.BankServer;
+import bank.BankServerConfig;
+import bank.BinaryServer;
+import bank.db.DBHandler;
+import bank.json.JsonCodec;
+import bank.transactions.BankDeposit;
+import bank.transactions.BankTransfer;
+import bank.transactions.BankWithdrawal;
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionType;
+import bank.utils.FeesCalculator;
+import bank.wire.WireCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.Duration;
+
+// Not a test, run its main by hand: compares the REST and the binary transports against the same bank
+public class DispatcherBenchmark {
+    private static final String CARD = "4000000000000000";
+    private static final int WARMUP = 2000;
+    private static final int ROUNDS = 10000;
+    private static final int CODEC_ROUNDS = 1000000;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("dispatcher-benchmark");
+        String url = "jdbc:sqlite:" + dir.resolve("bank.db");
+        DBHandler dbHandler = new DBHandler(url, 4);
+        try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO clients VALUES ('ktsiounis', 'Kostas', 'Tsiounis', 0);");
+            stmt.execute("INSERT INTO cards VALUES ('" + CARD + "', 'ktsiounis', '5555');");
+            stmt.execute("INSERT INTO accounts VALUES ('ktsiounis', 0, 20000);");
+        }
+        dbHandler.enableProfileCache(DBHandler.DEFAULT_PROFILE_CACHE_SIZE, DBHandler.DEFAULT_PROFILE_CACHE_TTL_MILLIS);
+        // In memory balances, so the transports and not SQLite dominate the numbers
+        dbHandler.enableLedger(1000);
+        FeesCalculator feesCalculator = new FeesCalculator();
+        BankFacade facade = new BankFacade(dbHandler, new BankWithdrawal(feesCalculator),
+                new BankDeposit(feesCalculator), new BankTransfer(feesCalculator));
+
+        BankServer restServer = new BankServer(facade, new BankServerConfig("127.0.0.1", 0, 0,
+                BankServerConfig.ExecutionMode.PLATFORM_POOL, 2));
+        restServer.start();
+        BinaryServer binaryServer = new BinaryServer(facade, new InetSocketAddress("127.0.0.1", 0), 0);
+        binaryServer.start();
+
+        try {
+            codecs();
+            transport("REST", new RESTDispatcher("http://127.0.0.1:" + restServer.getAddress().getPort(),
+                    Duration.ofSeconds(2), Duration.ofSeconds(10)));
+            BinaryDispatcher binary = new BinaryDispatcher(binaryServer.getAddress());
+            transport("binary", binary);
+            binary.close();
+        } finally {
+            restServer.stop(0);
+            binaryServer.stop();
+            dbHandler.close();
+        }
+    }
+
+    private static void codecs() throws Exception {
+        TransactionData data = new TransactionData(CARD, "5555".toCharArray(), TransactionType.Transfer,
+                new AccountType[]{AccountType.Chequing, AccountType.Savings}, 12345);
+
+        JsonCodec json = new JsonCodec();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        json.writeTransactionData(out, data);
+        int jsonBytes = out.size();
+        long start = System.nanoTime();
+        for (int i = 0; i < CODEC_ROUNDS; i++) {
+            out.reset();
+            json.writeTransactionData(out, data);
+            json.readTransactionData(new ByteArrayInputStream(out.toByteArray()));
+        }
+        report("JSON codec", jsonBytes + " bytes", CODEC_ROUNDS, System.nanoTime() - start);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WireCodec.MAX_FRAME);
+        WireCodec.writeTransaction(buffer, data);
+        int binaryBytes = buffer.position();
+        start = System.nanoTime();
+        for (int i = 0; i < CODEC_ROUNDS; i++) {
+            buffer.clear();
+            WireCodec.writeTransaction(buffer, data);
+            buffer.flip();
+            WireCodec.readOpcode(buffer);
+            WireCodec.readTransaction(buffer);
+        }
+        report("binary codec", binaryBytes + " bytes", CODEC_ROUNDS, System.nanoTime() - start);
+    }
+
+    private static void transport(String name, MessageDispatcher dispatcher) {
+        String sessionToken = dispatcher.login(CARD, "5555".toCharArray());
+        ATMDeposit deposit = new ATMDeposit();
+        deposit.setToAccount(AccountType.Chequing);
+        deposit.setAmount(1);
+
+        for (int i = 0; i < WARMUP; i++) {
+            dispatcher.performTransaction(CARD, sessionToken, deposit);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            dispatcher.performTransaction(CARD, sessionToken, deposit);
+        }
+        report(name + " round trips", "", ROUNDS, System.nanoTime() - start);
+    }
+
+    private static void report(String name, String detail, int rounds, long nanos) {
+        System.out.printf("%-22s %12s %10.2f us/op %12.0f ops/s%n", name, detail, nanos / 1000.0 / rounds,
+                rounds * 1e9 / nanos);
+    }
+}
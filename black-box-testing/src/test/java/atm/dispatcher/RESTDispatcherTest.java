@@ -0,0 +1,112 @@
+package atm.dispatcher;
+
+import atm.exceptions.BankUnavailableException;
+import atm.session.transactions.ATMDeposit;
+import bank.BankFacade;
+import bank.BankServer;
+import bank.BankServerConfig;
+import bank.db.DBHandler;
+import bank.transactions.BankDeposit;
+import bank.transactions.BankTransfer;
+import bank.transactions.BankWithdrawal;
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionResult;
+import bank.utils.FeesCalculator;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RESTDispatcherTest {
+    private static final String CARD = "4000000000000000";
+
+    @TempDir
+    Path tempDir;
+
+    private DBHandler dbHandler;
+    private BankServer server;
+    private RESTDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String url = "jdbc:sqlite:" + tempDir.resolve("bank-test.db");
+        dbHandler = new DBHandler(url, 2);
+        try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO clients VALUES ('ktsiounis', 'Kostas', 'Tsiounis', 0);");
+            stmt.execute("INSERT INTO cards VALUES ('" + CARD + "', 'ktsiounis', '5555');");
+            stmt.execute("INSERT INTO accounts VALUES ('ktsiounis', 0, 20000);");
+        }
+        FeesCalculator feesCalculator = new FeesCalculator();
+        BankFacade facade = new BankFacade(dbHandler, new BankWithdrawal(feesCalculator),
+                new BankDeposit(feesCalculator), new BankTransfer(feesCalculator));
+
+        server = new BankServer(facade, new BankServerConfig("127.0.0.1", 0, 0,
+                BankServerConfig.ExecutionMode.PLATFORM_POOL, 2));
+        server.start();
+        dispatcher = new RESTDispatcher("http://127.0.0.1:" + server.getAddress().getPort(),
+                Duration.ofSeconds(2), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        dbHandler.close();
+    }
+
+    @Test
+    @DisplayName("test 1: credentials, session token and transactions go through the shared client")
+    void credentials_and_transactions() throws Exception {
+        assertFalse(dispatcher.checkCredentials(CARD, "0000".toCharArray()));
+        assertNull(dispatcher.login(CARD, "0000".toCharArray()));
+
+        assertTrue(dispatcher.checkCredentials(CARD, "5555".toCharArray()));
+        String sessionToken = dispatcher.login(CARD, "5555".toCharArray());
+        assertNotNull(sessionToken);
+
+        ATMDeposit deposit = new ATMDeposit();
+        deposit.setToAccount(AccountType.Chequing);
+        deposit.setAmount(1000);
+        TransactionResult result = dispatcher.performTransaction(CARD, sessionToken, deposit);
+        assertTrue(result.isSuccessful());
+        assertEquals(21000, result.getAccountBalances()[0]);
+
+        TransactionResult async = dispatcher.performTransactionAsync(CARD, sessionToken, deposit)
+                .get(5, TimeUnit.SECONDS);
+        assertTrue(async.isSuccessful());
+        assertEquals(22000, async.getAccountBalances()[0]);
+    }
+
+    @Test
+    @DisplayName("test 2: an unreachable bank fails after bounded retries and then trips the circuit")
+    void unreachable_bank_trips_circuit() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        RESTDispatcher down = new RESTDispatcher("http://127.0.0.1:" + port, Duration.ofMillis(500),
+                Duration.ofSeconds(1), new RetryPolicy(3, Duration.ofMillis(5), Duration.ofMillis(20)), 3,
+                Duration.ofMinutes(1));
+
+        ATMDeposit deposit = new ATMDeposit();
+        deposit.setToAccount(AccountType.Chequing);
+        deposit.setAmount(1000);
+        assertNull(down.performTransaction(CARD, "token", deposit));
+        assertEquals(CircuitBreaker.State.OPEN, down.getCircuitState("performTransaction"));
+        // Fails fast without touching the network, the other endpoint keeps its own breaker
+        assertNull(down.performTransaction(CARD, "token", deposit));
+        assertEquals(CircuitBreaker.State.CLOSED, down.getCircuitState("checkCredentials"));
+
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> down.performTransactionAsync(CARD, "token", deposit).get(5, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof BankUnavailableException);
+    }
+}
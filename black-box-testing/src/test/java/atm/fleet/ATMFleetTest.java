@@ -0,0 +1,85 @@
+package atm.fleet;
+
+import atm.dispatcher.JavaDispatcher;
+import bank.BankFacade;
+import bank.db.DBHandler;
+import bank.transactions.BankDeposit;
+import bank.transactions.BankTransfer;
+import bank.transactions.BankWithdrawal;
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionType;
+import bank.utils.FeesCalculator;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ATMFleetTest {
+    private static final int ATMS = 20;
+
+    @TempDir
+    Path tempDir;
+
+    private DBHandler dbHandler;
+    private JavaDispatcher dispatcher;
+    private Map<String, String> cards;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String url = "jdbc:sqlite:" + tempDir.resolve("bank-test.db");
+        dbHandler = new DBHandler(url, 2);
+        cards = ATMFleet.seed(url, ATMS);
+        FeesCalculator feesCalculator = new FeesCalculator();
+        BankFacade facade = new BankFacade(dbHandler, new BankWithdrawal(feesCalculator),
+                new BankDeposit(feesCalculator), new BankTransfer(feesCalculator));
+        dispatcher = new JavaDispatcher(facade);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dbHandler.close();
+    }
+
+    @Test
+    @DisplayName("test 1: every headless session reaches a result and is counted under its transaction type")
+    void fleet_completes_every_session() throws Exception {
+        FleetConfig config = new FleetConfig(ATMS, 3, FleetConfig.parseMix(FleetConfig.DEFAULT_MIX), 0, 2, 10000);
+        FleetReport report = new ATMFleet(config, dispatcher, cards).run();
+
+        long total = 0;
+        for (TransactionType type : TransactionType.values()) {
+            assertEquals(0, report.getFailures(type));
+            assertEquals(report.getTransactions(type), report.getLatency(type).getCount());
+            total += report.getTransactions(type);
+        }
+        assertEquals(ATMS * 3, total);
+        assertTrue(report.getElapsedNanos() > 0);
+    }
+
+    @Test
+    @DisplayName("test 2: a deposit only mix sends nothing else and the deposits reach the accounts")
+    void mix_limits_transaction_types() throws Exception {
+        FleetConfig config = new FleetConfig(ATMS, 2, FleetConfig.parseMix("Deposit:1"), 0, 0, 10000);
+        FleetReport report = new ATMFleet(config, dispatcher, cards).run();
+
+        assertEquals(ATMS * 2, report.getTransactions(TransactionType.Deposit));
+        assertEquals(0, report.getTransactions(TransactionType.Withdrawal));
+        assertEquals(0, report.getTransactions(TransactionType.Transfer));
+        assertTrue(dbHandler.getBalance("fleet0", AccountType.Chequing) > 1000000);
+    }
+
+    @Test
+    @DisplayName("test 3: ATMs sharing a card each keep their own session token")
+    void atms_share_cards() throws Exception {
+        Map<String, String> oneCard = Map.of(cards.keySet().iterator().next(), "1234");
+        FleetConfig config = new FleetConfig(ATMS, 3, FleetConfig.parseMix(FleetConfig.DEFAULT_MIX), 0, 1, 10000);
+        FleetReport report = new ATMFleet(config, dispatcher, oneCard).run();
+
+        for (TransactionType type : TransactionType.values()) {
+            assertEquals(0, report.getFailures(type));
+        }
+    }
+}
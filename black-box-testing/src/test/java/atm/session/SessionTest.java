@@ -0,0 +1,98 @@
+package atm.session;
+
+import atm.dispatcher.AsyncMessageDispatcher;
+import atm.session.transactions.ATMTransactionFactory;
+import atm.ui.panels.MainPanel;
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionResult;
+import bank.transactions.utils.TransactionType;
+import org.junit.jupiter.api.*;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionTest {
+    private static final String CARD = "4000000000000000";
+
+    private AsyncMessageDispatcher dispatcher;
+    private MainPanel mainPanel;
+    private List<Runnable> callbacks;
+    private Session session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dispatcher = Mockito.mock(AsyncMessageDispatcher.class);
+        mainPanel = Mockito.mock(MainPanel.class);
+        callbacks = new ArrayList<>();
+        // Callbacks are queued, like SwingUtilities.invokeLater, and run by the test
+        session = new Session(mainPanel, dispatcher, callbacks::add);
+
+        session.insertCard();
+        session.addCard(CARD);
+        session.addSessionToken("token");
+        session.setTransaction(ATMTransactionFactory.createTransaction(TransactionType.Withdrawal));
+        session.setFromAccount(AccountType.Chequing);
+    }
+
+    @Test
+    @DisplayName("test 1: the session shows the result only after the async transaction completes")
+    void advances_when_future_completes() throws Exception {
+        CompletableFuture<TransactionResult> pending = new CompletableFuture<>();
+        Mockito.when(dispatcher.performTransactionAsync(ArgumentMatchers.eq(CARD), ArgumentMatchers.any(),
+                ArgumentMatchers.any())).thenReturn(pending);
+
+        session.setAmount(20);
+        Mockito.verify(mainPanel, Mockito.never()).changeLayout("Result");
+        Mockito.verify(dispatcher, Mockito.never()).performTransaction(ArgumentMatchers.any(), ArgumentMatchers.any(),
+                ArgumentMatchers.any());
+
+        pending.complete(new TransactionResult(true, null, 200, new long[]{9800}));
+        assertEquals(1, callbacks.size());
+        Mockito.verify(mainPanel, Mockito.never()).changeLayout("Result");
+
+        callbacks.get(0).run();
+        Mockito.verify(mainPanel).setResult(ArgumentMatchers.contains("98.00"));
+        Mockito.verify(mainPanel).changeLayout("Result");
+    }
+
+    @Test
+    @DisplayName("test 2: a failed future still reaches the result screen with an unsuccessful receipt")
+    void failed_future_shows_receipt() throws Exception {
+        CompletableFuture<TransactionResult> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("connection refused"));
+        Mockito.when(dispatcher.performTransactionAsync(ArgumentMatchers.eq(CARD), ArgumentMatchers.any(),
+                ArgumentMatchers.any())).thenReturn(failed);
+
+        session.setAmount(20);
+        callbacks.forEach(Runnable::run);
+
+        Mockito.verify(mainPanel).setResult(ArgumentMatchers.contains("The bank could not be reached."));
+        Mockito.verify(mainPanel).changeLayout("Result");
+    }
+
+    @Test
+    @DisplayName("test 3: an expired session token sends the customer back to PIN entry without retrying")
+    void expired_token_returns_to_pin_entry() throws Exception {
+        Mockito.when(dispatcher.performTransactionAsync(ArgumentMatchers.eq(CARD), ArgumentMatchers.eq("token"),
+                ArgumentMatchers.any())).thenReturn(CompletableFuture.completedFuture(
+                        new TransactionResult(false, "Invalid credentials.", 0, null)));
+
+        session.setAmount(20);
+        callbacks.forEach(Runnable::run);
+
+        Mockito.verify(mainPanel, Mockito.never()).changeLayout("Result");
+        Mockito.verify(mainPanel, Mockito.times(2)).changeLayout("Pin");
+        Mockito.verify(dispatcher, Mockito.never()).loginAsync(ArgumentMatchers.any(), ArgumentMatchers.any());
+        Mockito.verify(dispatcher, Mockito.never()).login(ArgumentMatchers.any(), ArgumentMatchers.any());
+        assertFalse(session.getResult().isSuccessful());
+
+        // A new token from PIN entry goes on to choosing the transaction again
+        session.addSessionToken("renewed");
+        Mockito.verify(mainPanel, Mockito.times(2)).changeLayout("Transaction");
+    }
+}
@@ -0,0 +1,421 @@
+package bank;
+
+import bank.db.DBHandler;
+import bank.journal.JournalRecord;
+import bank.journal.TransactionJournal;
+import bank.transactions.BankDeposit;
+import bank.transactions.BankTransfer;
+import bank.transactions.BankWithdrawal;
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+import bank.transactions.utils.TransactionType;
+import bank.utils.FeesCalculator;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BankFacadeTest {
+    private static final String CARD = "4000000000000000";
+    private static final String OTHER_CARD = "4000000000000001";
+    private static final char[] PIN = "5555".toCharArray();
+
+    @TempDir
+    Path tempDir;
+
+    private DBHandler dbHandler;
+    private BankFacade facade;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String url = "jdbc:sqlite:" + tempDir.resolve("bank-test.db");
+        dbHandler = new DBHandler(url, 2);
+        try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO clients VALUES ('ktsiounis', 'Kostas', 'Tsiounis', 0);");
+            stmt.execute("INSERT INTO clients VALUES ('jkwan', 'Jason', 'Kwan', 0);");
+            stmt.execute("INSERT INTO cards VALUES ('" + CARD + "', 'ktsiounis', '5555');");
+            stmt.execute("INSERT INTO cards VALUES ('" + OTHER_CARD + "', 'jkwan', '5555');");
+            stmt.execute("INSERT INTO accounts VALUES ('ktsiounis', 0, 20000);");
+            stmt.execute("INSERT INTO accounts VALUES ('jkwan', 0, 20000);");
+        }
+
+        FeesCalculator feesCalculator = new FeesCalculator();
+        facade = new BankFacade(dbHandler, new BankWithdrawal(feesCalculator), new BankDeposit(feesCalculator),
+                new BankTransfer(feesCalculator));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dbHandler.close();
+    }
+
+    private static TransactionData deposit(String card, long amount) {
+        return new TransactionData(card, PIN, TransactionType.Deposit, new AccountType[]{AccountType.Chequing}, amount);
+    }
+
+    private static TransactionData withdrawal(String card, long amount) {
+        return new TransactionData(card, PIN, TransactionType.Withdrawal, new AccountType[]{AccountType.Chequing},
+                amount);
+    }
+
+    @Test
+    @DisplayName("test 1: a batch returns one result per entry in order and applies every successful entry")
+    void batch_results_in_order() throws Exception {
+        List<TransactionResult> results = facade.performTransactions(Arrays.asList(
+                deposit(CARD, 1000),
+                withdrawal(OTHER_CARD, 5000),
+                withdrawal(CARD, 1000000),
+                new TransactionData(CARD, "0000".toCharArray(), TransactionType.Deposit,
+                        new AccountType[]{AccountType.Chequing}, 1000),
+                deposit("5100000000000000", 1000),
+                deposit(CARD, 1000)));
+
+        assertEquals(6, results.size());
+        assertTrue(results.get(0).isSuccessful());
+        assertEquals(21000, results.get(0).getAccountBalances()[0]);
+        assertTrue(results.get(1).isSuccessful());
+        assertEquals("Insufficient funds.", results.get(2).getReason());
+        assertEquals("Invalid credentials.", results.get(3).getReason());
+        assertEquals("Invalid credentials.", results.get(4).getReason());
+        assertTrue(results.get(5).isSuccessful());
+        assertEquals(22000, results.get(5).getAccountBalances()[0]);
+
+        assertEquals(22000, dbHandler.getBalance("ktsiounis", AccountType.Chequing));
+        assertEquals(20000 - 5000 - 10, dbHandler.getBalance("jkwan", AccountType.Chequing));
+    }
+
+    @Test
+    @DisplayName("test 2: a single transaction behaves like a batch of one")
+    void single_transaction_matches_batch() throws Exception {
+        TransactionResult result = facade.performTransaction(withdrawal(CARD, 10000));
+        assertTrue(result.isSuccessful());
+        assertEquals(20, result.getFees());
+        assertEquals(9980, dbHandler.getBalance("ktsiounis", AccountType.Chequing));
+        assertEquals("Invalid credentials.", facade.performTransaction(new TransactionData(CARD, "bad-token",
+                TransactionType.Deposit, new AccountType[]{AccountType.Chequing}, 1000)).getReason());
+    }
+
+    @Test
+    @DisplayName("test 3: a retried idempotency key returns the first result without applying it again")
+    void idempotency_key_applies_once() throws Exception {
+        TransactionData first = withdrawal(CARD, 10000);
+        first.setIdempotencyKey("key-1");
+        TransactionResult result = facade.performTransaction(first);
+        assertTrue(result.isSuccessful());
+
+        TransactionData retry = withdrawal(CARD, 10000);
+        retry.setIdempotencyKey("key-1");
+        assertSame(result, facade.performTransaction(retry));
+        assertEquals(9980, dbHandler.getBalance("ktsiounis", AccountType.Chequing));
+
+        // The key belongs to the card, and a wrong PIN never sees the stored result
+        TransactionData otherCard = withdrawal(OTHER_CARD, 10000);
+        otherCard.setIdempotencyKey("key-1");
+        assertTrue(facade.performTransaction(otherCard).isSuccessful());
+        TransactionData wrongPin = new TransactionData(CARD, "0000".toCharArray(), TransactionType.Withdrawal,
+                new AccountType[]{AccountType.Chequing}, 10000);
+        wrongPin.setIdempotencyKey("key-1");
+        assertEquals("Invalid credentials.", facade.performTransaction(wrongPin).getReason());
+
+        // Stored with the balances, the key survives a restart
+        dbHandler.close();
+        dbHandler = new DBHandler("jdbc:sqlite:" + tempDir.resolve("bank-test.db"), 2);
+        FeesCalculator feesCalculator = new FeesCalculator();
+        BankFacade restarted = new BankFacade(dbHandler, new BankWithdrawal(feesCalculator),
+                new BankDeposit(feesCalculator), new BankTransfer(feesCalculator));
+        TransactionResult replayed = restarted.performTransaction(retry);
+        assertTrue(replayed.isSuccessful());
+        assertEquals(20, replayed.getFees());
+        assertArrayEquals(result.getAccountBalances(), replayed.getAccountBalances());
+        assertEquals(9980, dbHandler.getBalance("ktsiounis", AccountType.Chequing));
+    }
+
+    @Test
+    @DisplayName("test 4: concurrent deposits and opposite transfers on the ledger lose no update and do not deadlock")
+    void concurrent_updates_on_ledger() throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("bank-test.db"));
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO accounts VALUES ('ktsiounis', 1, 20000);");
+        }
+        dbHandler.enableLedger(60000);
+
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<Long>> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final boolean forward = t % 2 == 0;
+            workers.add(threads.submit(() -> {
+                long net = 0;
+                for (int i = 0; i < 50; i++) {
+                    TransactionResult deposit = facade.performTransaction(deposit(CARD, 100));
+                    assertTrue(deposit.isSuccessful());
+                    net += 100 - deposit.getFees();
+                    AccountType[] accounts = forward
+                            ? new AccountType[]{AccountType.Chequing, AccountType.Savings}
+                            : new AccountType[]{AccountType.Savings, AccountType.Chequing};
+                    TransactionResult transfer = facade.performTransaction(
+                            new TransactionData(CARD, PIN, TransactionType.Transfer, accounts, 10));
+                    if (transfer.isSuccessful())
+                        net -= transfer.getFees();
+                }
+                return net;
+            }));
+        }
+        long expected = 40000;
+        for (Future<Long> worker : workers) {
+            expected += worker.get();
+        }
+        threads.shutdown();
+
+        assertEquals(expected, dbHandler.getBalance("ktsiounis", AccountType.Chequing)
+                + dbHandler.getBalance("ktsiounis", AccountType.Savings));
+    }
+
+    @Test
+    @DisplayName("test 5: two optimistic banks on one database retry conflicts and keep every committed deposit")
+    void optimistic_banks_share_database() throws Exception {
+        dbHandler.enableOptimisticUpdates();
+        DBHandler otherHandler = new DBHandler("jdbc:sqlite:" + tempDir.resolve("bank-test.db"), 2);
+        otherHandler.enableOptimisticUpdates();
+        FeesCalculator feesCalculator = new FeesCalculator();
+        BankFacade otherBank = new BankFacade(otherHandler, new BankWithdrawal(feesCalculator),
+                new BankDeposit(feesCalculator), new BankTransfer(feesCalculator));
+
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> workers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                BankFacade bank = t % 2 == 0 ? facade : otherBank;
+                workers.add(threads.submit(() -> {
+                    long net = 0;
+                    for (int i = 0; i < 25; i++) {
+                        TransactionResult result = bank.performTransaction(deposit(CARD, 100));
+                        if (result.isSuccessful())
+                            net += 100 - result.getFees();
+                    }
+                    return net;
+                }));
+            }
+            long expected = 20000;
+            for (Future<Long> worker : workers) {
+                expected += worker.get();
+            }
+            assertTrue(expected > 20000);
+            assertEquals(expected, dbHandler.getBalance("ktsiounis", AccountType.Chequing));
+        } finally {
+            threads.shutdown();
+            otherHandler.close();
+        }
+    }
+
+    @Test
+    @DisplayName("test 6: sequenced batches wrap the ring, keep every update and reply only once it is checkpointed")
+    void sequencer_applies_in_order() throws Exception {
+        dbHandler.enableLedger(60000);
+        facade.enableSequencer(8);
+
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> workers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                String card = t % 2 == 0 ? CARD : OTHER_CARD;
+                workers.add(threads.submit(() -> {
+                    long net = 0;
+                    for (int i = 0; i < 20; i++) {
+                        List<TransactionResult> results = facade.performTransactions(
+                                Arrays.asList(deposit(card, 100), withdrawal(card, 20), deposit(card, 100)));
+                        assertEquals(3, results.size());
+                        for (int r = 0; r < results.size(); r++) {
+                            TransactionResult result = results.get(r);
+                            assertTrue(result.isSuccessful());
+                            net += (r == 1 ? -20 : 100) - result.getFees();
+                        }
+                    }
+                    return net;
+                }));
+            }
+            long expected = 40000;
+            for (Future<Long> worker : workers) {
+                expected += worker.get();
+            }
+
+            // Replies came after the checkpoint, so SQLite already has every balance
+            long stored = 0;
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("bank-test.db"));
+                    Statement stmt = conn.createStatement();
+                    ResultSet rs = stmt.executeQuery("SELECT SUM(balance) FROM accounts;")) {
+                rs.next();
+                stored = rs.getLong(1);
+            }
+            assertEquals(expected, stored);
+        } finally {
+            threads.shutdown();
+            facade.disableSequencer();
+        }
+        assertFalse(facade.isSequencerEnabled());
+    }
+
+    @Test
+    @DisplayName("test 7: a group that fails after a successful entry leaves nothing in the journal")
+    void failed_group_is_not_journaled() throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("bank-test.db"));
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO accounts VALUES ('ktsiounis', 1, 20000);");
+            // Savings can no longer be written, a transfer fails after it updated Chequing
+            stmt.execute("CREATE TRIGGER refuse_savings BEFORE INSERT ON accounts WHEN NEW.type = 1 "
+                    + "BEGIN SELECT RAISE(ABORT, 'refused'); END;");
+        }
+        try (TransactionJournal journal = new TransactionJournal(tempDir.resolve("journal"), 1 << 16, false)) {
+            facade.setJournal(journal);
+            List<TransactionResult> results = facade.performTransactions(Arrays.asList(deposit(CARD, 1000),
+                    new TransactionData(CARD, PIN, TransactionType.Transfer,
+                            new AccountType[]{AccountType.Chequing, AccountType.Savings}, 100)));
+            assertFalse(results.get(0).isSuccessful());
+            assertFalse(results.get(1).isSuccessful());
+
+            assertTrue(facade.performTransaction(deposit(OTHER_CARD, 1000)).isSuccessful());
+            List<JournalRecord> records = new ArrayList<>();
+            journal.replay(records::add);
+            assertEquals(1, records.size());
+            assertEquals("jkwan", records.get(0).getUsername());
+        }
+        assertEquals(20000, dbHandler.getBalance("ktsiounis", AccountType.Chequing));
+    }
+
+    @Test
+    @DisplayName("test 8: optimistic retries journal only the attempt that committed and replay to the same balance")
+    void optimistic_retries_journal_once() throws Exception {
+        dbHandler.enableOptimisticUpdates();
+        try (TransactionJournal journal = new TransactionJournal(tempDir.resolve("journal"), 1 << 20, false)) {
+            facade.setJournal(journal);
+            ExecutorService threads = Executors.newFixedThreadPool(8);
+            long successful = 0;
+            try {
+                List<Future<Long>> workers = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    workers.add(threads.submit(() -> {
+                        long count = 0;
+                        for (int i = 0; i < 25; i++) {
+                            if (facade.performTransaction(deposit(CARD, 100)).isSuccessful())
+                                count++;
+                        }
+                        return count;
+                    }));
+                }
+                for (Future<Long> worker : workers) {
+                    successful += worker.get();
+                }
+            } finally {
+                threads.shutdown();
+            }
+
+            List<JournalRecord> records = new ArrayList<>();
+            journal.replay(records::add);
+            assertEquals(successful, records.size());
+
+            DBHandler replayed = new DBHandler("jdbc:sqlite:" + tempDir.resolve("replayed.db"), 1);
+            try {
+                journal.replay(replayed);
+                assertEquals(dbHandler.getBalance("ktsiounis", AccountType.Chequing),
+                        replayed.getBalance("ktsiounis", AccountType.Chequing));
+            } finally {
+                replayed.close();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("test 9: the sequencer refuses to start without the ledger")
+    void sequencer_needs_ledger() {
+        assertThrows(IllegalStateException.class, () -> facade.enableSequencer(8));
+        assertFalse(facade.isSequencerEnabled());
+    }
+
+    @Test
+    @DisplayName("test 10: a checkpoint that keeps failing fails the transactions it covered and every one after it")
+    void sequencer_fails_when_checkpoint_fails() throws Exception {
+        dbHandler.enableLedger(60000);
+        facade.enableSequencer(8);
+        String url = "jdbc:sqlite:" + tempDir.resolve("bank-test.db");
+        try {
+            try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TRIGGER refuse_insert BEFORE INSERT ON accounts "
+                        + "BEGIN SELECT RAISE(ABORT, 'refused'); END;");
+                stmt.execute("CREATE TRIGGER refuse_update BEFORE UPDATE ON accounts "
+                        + "BEGIN SELECT RAISE(ABORT, 'refused'); END;");
+            }
+            assertFalse(facade.performTransaction(deposit(CARD, 1000)).isSuccessful());
+
+            // Storage is writable again, but the sequencer no longer takes work
+            try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TRIGGER refuse_insert;");
+                stmt.execute("DROP TRIGGER refuse_update;");
+            }
+            assertFalse(facade.performTransaction(deposit(OTHER_CARD, 1000)).isSuccessful());
+        } finally {
+            facade.disableSequencer();
+        }
+    }
+
+    @Test
+    @DisplayName("test 11: an entry without a type or with too few accounts fails alone and the rest of the batch runs")
+    void incomplete_entries_fail_alone() throws Exception {
+        List<TransactionResult> results = facade.performTransactions(Arrays.asList(
+                new TransactionData(CARD, PIN, null, new AccountType[]{AccountType.Chequing}, 100),
+                new TransactionData(CARD, PIN, TransactionType.Deposit, null, 100),
+                new TransactionData(CARD, PIN, TransactionType.Withdrawal, new AccountType[0], 100),
+                new TransactionData(CARD, PIN, TransactionType.Transfer, new AccountType[]{AccountType.Chequing}, 100),
+                deposit(CARD, 1000)));
+        assertEquals(5, results.size());
+        for (int i = 0; i < 4; i++) {
+            assertFalse(results.get(i).isSuccessful());
+            assertEquals("Invalid transaction.", results.get(i).getReason());
+        }
+        assertTrue(results.get(4).isSuccessful());
+        assertEquals(21000 - results.get(4).getFees(), dbHandler.getBalance("ktsiounis", AccountType.Chequing));
+    }
+
+    @Test
+    @DisplayName("test 12: a key pushed out of a full cache is found in storage and still applies once")
+    void evicted_key_applies_once() throws Exception {
+        dbHandler.close();
+        dbHandler = new DBHandler("jdbc:sqlite:" + tempDir.resolve("bank-test.db"), 2, 2, 60000);
+        FeesCalculator feesCalculator = new FeesCalculator();
+        BankFacade small = new BankFacade(dbHandler, new BankWithdrawal(feesCalculator),
+                new BankDeposit(feesCalculator), new BankTransfer(feesCalculator));
+        // Direct commits first, then the ledger where the first result is not checkpointed yet
+        for (String mode : new String[]{"direct", "ledger"}) {
+            if (mode.equals("ledger"))
+                dbHandler.enableLedger(60000);
+            TransactionData first = withdrawal(CARD, 1000);
+            first.setIdempotencyKey(mode + "-first");
+            TransactionResult result = small.performTransaction(first);
+            assertTrue(result.isSuccessful());
+            long balance = dbHandler.getBalance("ktsiounis", AccountType.Chequing);
+            for (int i = 0; i < 3; i++) {
+                TransactionData other = deposit(OTHER_CARD, 100);
+                other.setIdempotencyKey(mode + "-other-" + i);
+                assertTrue(small.performTransaction(other).isSuccessful());
+            }
+
+            TransactionData retry = withdrawal(CARD, 1000);
+            retry.setIdempotencyKey(mode + "-first");
+            TransactionResult replayed = small.performTransaction(retry);
+            assertTrue(replayed.isSuccessful());
+            assertArrayEquals(result.getAccountBalances(), replayed.getAccountBalances());
+            assertEquals(balance, dbHandler.getBalance("ktsiounis", AccountType.Chequing));
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package bank;
+
+import bank.db.DBHandler;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+import bank.transactions.BankDeposit;
+import bank.transactions.BankTransfer;
+import bank.transactions.BankWithdrawal;
+import bank.utils.FeesCalculator;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BankServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private DBHandler dbHandler;
+    private BankFacade facade;
+
+    @BeforeEach
+    void setUp() {
+        dbHandler = new DBHandler("jdbc:sqlite:" + tempDir.resolve("bank-test.db"), 2);
+        FeesCalculator feesCalculator = new FeesCalculator();
+        facade = new BankFacade(dbHandler, new BankWithdrawal(feesCalculator), new BankDeposit(feesCalculator),
+                new BankTransfer(feesCalculator));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dbHandler.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(BankServerConfig.ExecutionMode.class)
+    @DisplayName("test 1: every execution mode serves concurrent requests on the configured address")
+    void execution_modes_serve_requests(BankServerConfig.ExecutionMode mode) throws Exception {
+        BankServer server = new BankServer(facade, new BankServerConfig("127.0.0.1", 0, 64, mode, 4));
+        server.start();
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            assertNotEquals(0, server.getAddress().getPort());
+            URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/checkCredentials");
+
+            List<Future<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                responses.add(clients.submit(() -> post(url, "{\"cardNumber\":\"5100000000000000\",\"pin\":\"5555\"}")));
+            }
+            for (Future<String> response : responses) {
+                assertEquals("null", response.get());
+            }
+        } finally {
+            clients.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    @DisplayName("test 2: a full endpoint is shed with 503 and Retry-After while the others keep serving")
+    void full_endpoint_is_shed() throws Exception {
+        AdmissionControl admission = new AdmissionControl(4, 10, 3);
+        admission.setLimit(AdmissionControl.PERFORM_TRANSACTION, 1, 0);
+        BankServer server = new BankServer(facade, new BankServerConfig("127.0.0.1", 0, 0,
+                BankServerConfig.ExecutionMode.PLATFORM_POOL, 2), admission);
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            // Holds the only transaction slot, as a slow transaction would
+            assertTrue(admission.tryEnter(AdmissionControl.PERFORM_TRANSACTION));
+
+            HttpURLConnection con = open(new URL(base + "/performTransaction"), "{}");
+            assertEquals(503, con.getResponseCode());
+            assertEquals("3", con.getHeaderField("Retry-After"));
+            assertEquals(1, admission.getShedCount());
+
+            assertEquals("null", post(new URL(base + "/checkCredentials"),
+                    "{\"cardNumber\":\"5100000000000000\",\"pin\":\"5555\"}"));
+
+            admission.exit(AdmissionControl.PERFORM_TRANSACTION);
+            assertEquals(200, open(new URL(base + "/performTransaction"), "{}").getResponseCode());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    @DisplayName("test 3: /metrics reports request counts and latencies per endpoint")
+    void metrics_endpoint() throws Exception {
+        BankServer server = new BankServer(facade, new BankServerConfig("127.0.0.1", 0, 0,
+                BankServerConfig.ExecutionMode.PLATFORM_POOL, 2));
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            post(new URL(base + "/checkCredentials"), "{\"cardNumber\":\"5100000000000000\",\"pin\":\"5555\"}");
+
+            HttpURLConnection con = (HttpURLConnection) new URL(base + "/metrics").openConnection();
+            assertEquals(200, con.getResponseCode());
+            assertTrue(con.getContentType().startsWith("text/plain; version=0.0.4"));
+            String text;
+            try (InputStream in = con.getInputStream()) {
+                text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            assertTrue(text.contains("# TYPE bank_http_request_seconds summary"));
+            assertTrue(text.contains("bank_http_requests_total{endpoint=\"checkCredentials\"}"));
+            assertTrue(text.contains("bank_http_request_seconds{endpoint=\"checkCredentials\",quantile=\"0.999\"}"));
+            assertTrue(text.contains("bank_db_seconds"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    @DisplayName("test 4: the default dispatcher mode sheds with 503 and Retry-After once its queue is full")
+    void dispatcher_mode_sheds() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FeesCalculator feesCalculator = new FeesCalculator();
+        BankFacade slow = new BankFacade(dbHandler, new BankWithdrawal(feesCalculator),
+                new BankDeposit(feesCalculator), new BankTransfer(feesCalculator)) {
+            @Override
+            public TransactionResult performTransaction(TransactionData data) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.performTransaction(data);
+            }
+        };
+        BankServerConfig defaults = new BankServerConfig();
+        assertEquals(BankServerConfig.ExecutionMode.DISPATCHER, defaults.getExecutionMode());
+        AdmissionControl admission = new AdmissionControl(1, 10, 3);
+        BankServer server = new BankServer(slow, new BankServerConfig("127.0.0.1", 0, defaults.getBacklog(),
+                defaults.getExecutionMode(), defaults.getPoolSize()), admission);
+        server.start();
+        ExecutorService clients = Executors.newFixedThreadPool(3);
+        try {
+            URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/performTransaction");
+            CompletionService<HttpURLConnection> requests = new ExecutorCompletionService<>(clients);
+            Callable<HttpURLConnection> request = () -> {
+                HttpURLConnection con = open(url, "{}");
+                con.getResponseCode();
+                return con;
+            };
+            requests.submit(request);
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            // The worker is busy and one request fits the queue, the other is answered by the dispatcher
+            requests.submit(request);
+            requests.submit(request);
+            Future<HttpURLConnection> first = requests.poll(5, TimeUnit.SECONDS);
+            assertNotNull(first);
+            HttpURLConnection shed = first.get();
+            assertEquals(503, shed.getResponseCode());
+            assertEquals("3", shed.getHeaderField("Retry-After"));
+            assertEquals(1, admission.getShedCount());
+
+            release.countDown();
+            assertEquals(200, requests.take().get().getResponseCode());
+            assertEquals(200, requests.take().get().getResponseCode());
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    private static HttpURLConnection open(URL url, String body) throws Exception {
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        con.setRequestMethod("POST");
+        con.setRequestProperty("Content-Type", "application/json; utf-8");
+        con.setDoOutput(true);
+        try (OutputStream os = con.getOutputStream()) {
+            os.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return con;
+    }
+
+    private static String post(URL url, String body) throws Exception {
+        HttpURLConnection con = open(url, body);
+        assertEquals(200, con.getResponseCode());
+        try (InputStream in = con.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
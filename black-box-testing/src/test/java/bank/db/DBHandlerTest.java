@@ -0,0 +1,379 @@
+package bank.db;
+
+import bank.exceptions.BalanceConflictException;
+import bank.exceptions.CardNotFoundException;
+import bank.exceptions.UnsuccessfulBalanceUpdate;
+import bank.exceptions.UserNotFoundException;
+import bank.transactions.utils.AccountType;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DBHandlerTest {
+    private static final String CARD = "4000000000000000";
+    private static final String USER = "ktsiounis";
+
+    @TempDir
+    Path tempDir;
+
+    private String url;
+    private DBHandler dbHandler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        url = "jdbc:sqlite:" + tempDir.resolve("bank-test.db");
+        dbHandler = new DBHandler(url, 2);
+
+        try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO clients VALUES ('" + USER + "', 'Kostas', 'Tsiounis', 1);");
+            stmt.execute("INSERT INTO cards VALUES ('" + CARD + "', '" + USER + "', '5555');");
+            stmt.execute("INSERT INTO accounts VALUES ('" + USER + "', 0, 79149);");
+            stmt.execute("INSERT INTO accounts VALUES ('" + USER + "', 1, 96897);");
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        dbHandler.close();
+    }
+
+    @Test
+    @DisplayName("test 1: profile lookups return the stored card owner, PIN and student flag")
+    void profile_lookups() throws Exception {
+        assertEquals(USER, dbHandler.getCardOwner(CARD));
+        assertArrayEquals("5555".toCharArray(), dbHandler.getPIN(USER));
+        assertTrue(dbHandler.isStudent(USER));
+    }
+
+    @Test
+    @DisplayName("test 2: unknown cards and users throw")
+    void unknown_card_and_user_throw() {
+        assertThrows(CardNotFoundException.class, () -> dbHandler.getCardOwner("5100000000000000"));
+        assertThrows(UserNotFoundException.class, () -> dbHandler.getBalance("nobody", AccountType.Chequing));
+        assertThrows(UserNotFoundException.class, () -> dbHandler.getBalance(USER, AccountType.TFSA));
+    }
+
+    @Test
+    @DisplayName("test 3: quotes in parameters are bound, not spliced into the SQL")
+    void parameters_are_bound() {
+        assertThrows(CardNotFoundException.class, () -> dbHandler.getCardOwner("' OR '1'='1"));
+    }
+
+    @Test
+    @DisplayName("test 4: balance updates keep every cent, even past double precision")
+    void set_balance_round_trip() throws Exception {
+        dbHandler.setBalance(USER, AccountType.Savings, 9007199254740993L);
+        assertEquals(9007199254740993L, dbHandler.getBalance(USER, AccountType.Savings));
+    }
+
+    @Test
+    @DisplayName("test 5: more concurrent callers than pooled connections are all served")
+    void concurrent_callers_share_the_pool() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> owners = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                owners.add(executor.submit(() -> dbHandler.getCardOwner(CARD)));
+            }
+            for (Future<String> owner : owners) {
+                assertEquals(USER, owner.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("test 6: the card context carries owner, PIN, student flag and every account balance")
+    void card_context_single_load() throws Exception {
+        CardContext context = dbHandler.loadCardContext(CARD);
+        assertEquals(USER, context.getUsername());
+        assertTrue(context.pinMatches("5555".toCharArray()));
+        assertFalse(context.pinMatches("5554".toCharArray()));
+        assertTrue(context.isStudent());
+        assertEquals(79149, context.getBalance(AccountType.Chequing));
+        assertEquals(96897, context.getBalance(AccountType.Savings));
+        assertFalse(context.hasAccount(AccountType.TFSA));
+        assertThrows(UserNotFoundException.class, () -> context.getBalance(AccountType.TFSA));
+        assertThrows(CardNotFoundException.class, () -> dbHandler.loadCardContext("5100000000000000"));
+    }
+
+    @Test
+    @DisplayName("test 7: a unit of work commits all of its writes together")
+    void unit_of_work_commit() throws Exception {
+        try (UnitOfWork unit = dbHandler.begin()) {
+            CardContext context = unit.loadCardContext(CARD);
+            context.updateBalance(AccountType.Chequing, 69149);
+            context.updateBalance(AccountType.Savings, 106897);
+            unit.commit();
+        }
+        assertEquals(69149, dbHandler.getBalance(USER, AccountType.Chequing));
+        assertEquals(106897, dbHandler.getBalance(USER, AccountType.Savings));
+    }
+
+    @Test
+    @DisplayName("test 8: a unit of work closed without commit leaves no partial transfer behind")
+    void unit_of_work_rollback() throws Exception {
+        try (UnitOfWork unit = dbHandler.begin()) {
+            CardContext context = unit.loadCardContext(CARD);
+            context.updateBalance(AccountType.Chequing, 0);
+        }
+        assertEquals(79149, dbHandler.getBalance(USER, AccountType.Chequing));
+    }
+
+    @Test
+    @DisplayName("test 9: the database runs in WAL journal mode")
+    void wal_journal_mode() throws Exception {
+        try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement();
+             java.sql.ResultSet rs = stmt.executeQuery("PRAGMA journal_mode;")) {
+            assertTrue(rs.next());
+            assertEquals("wal", rs.getString(1).toLowerCase());
+        }
+    }
+
+    @Test
+    @DisplayName("test 10: group commit makes every concurrent balance update durable")
+    void group_commit_concurrent_updates() throws Exception {
+        dbHandler.enableGroupCommit(16, 2000);
+        try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement()) {
+            for (int i = 0; i < 50; i++) {
+                stmt.execute("INSERT INTO accounts VALUES ('user" + i + "', 0, 0);");
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> updates = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                final int user = i;
+                updates.add(executor.submit(() -> {
+                    dbHandler.setBalance("user" + user, AccountType.Chequing, user * 1000L);
+                    return null;
+                }));
+            }
+            for (Future<?> update : updates) {
+                update.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i * 1000L, dbHandler.getBalance("user" + i, AccountType.Chequing));
+        }
+
+        try (UnitOfWork unit = dbHandler.begin()) {
+            CardContext context = unit.loadCardContext(CARD);
+            context.updateBalance(AccountType.Chequing, 100);
+            context.updateBalance(AccountType.Savings, 200);
+            unit.commit();
+        }
+        assertEquals(100, dbHandler.getBalance(USER, AccountType.Chequing));
+        assertEquals(200, dbHandler.getBalance(USER, AccountType.Savings));
+    }
+
+    @Test
+    @DisplayName("test 11: the ledger serves balances from memory and persists them on checkpoint")
+    void ledger_checkpoint() throws Exception {
+        dbHandler.enableLedger(60000);
+        assertEquals(79149, dbHandler.getBalance(USER, AccountType.Chequing));
+
+        try (UnitOfWork unit = dbHandler.begin()) {
+            CardContext context = unit.loadCardContext(CARD);
+            assertEquals(96897, context.getBalance(AccountType.Savings));
+            context.updateBalance(AccountType.Chequing, 70000);
+            context.updateBalance(AccountType.TFSA, 9149);
+            unit.commit();
+        }
+        assertEquals(70000, dbHandler.getBalance(USER, AccountType.Chequing));
+        assertEquals(9149, dbHandler.getBalance(USER, AccountType.TFSA));
+        assertEquals(79149, storedBalance(AccountType.Chequing));
+
+        assertEquals(2, dbHandler.checkpoint());
+        assertEquals(0, dbHandler.checkpoint());
+        assertEquals(70000, storedBalance(AccountType.Chequing));
+        assertEquals(9149, storedBalance(AccountType.TFSA));
+    }
+
+    @Test
+    @DisplayName("test 12: databases with real dollar balances are migrated to integer cents")
+    void real_balances_migrate_to_cents() throws Exception {
+        String legacyUrl = "jdbc:sqlite:" + tempDir.resolve("bank-legacy.db");
+        try (Connection conn = DriverManager.getConnection(legacyUrl); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE accounts (username text NOT NULL, type integer, balance real, PRIMARY KEY(username, type));");
+            stmt.execute("INSERT INTO accounts VALUES ('" + USER + "', 0, 791.485);");
+            stmt.execute("INSERT INTO accounts VALUES ('" + USER + "', 1, 0.1);");
+        }
+
+        DBHandler legacy = new DBHandler(legacyUrl, 1);
+        try {
+            assertEquals(79148, legacy.getBalance(USER, AccountType.Chequing));
+            assertEquals(10, legacy.getBalance(USER, AccountType.Savings));
+        } finally {
+            legacy.close();
+        }
+        try (Connection conn = DriverManager.getConnection(legacyUrl); Statement stmt = conn.createStatement();
+             java.sql.ResultSet rs = stmt.executeQuery("SELECT typeof(balance) FROM accounts;")) {
+            while (rs.next()) {
+                assertEquals("integer", rs.getString(1));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("test 13: cached profiles are served without reading the profile tables")
+    void profile_cache_serves_repeat_lookups() throws Exception {
+        dbHandler.enableProfileCache(100, 60000);
+        assertEquals(USER, dbHandler.getCardOwner(CARD));
+        assertEquals(0, dbHandler.getProfileCacheHits());
+        assertEquals(1, dbHandler.getProfileCacheMisses());
+
+        try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement()) {
+            stmt.execute("UPDATE cards SET pin = '0000';");
+            stmt.execute("UPDATE clients SET student = 0;");
+        }
+
+        assertEquals(USER, dbHandler.getCardOwner(CARD));
+        assertArrayEquals("5555".toCharArray(), dbHandler.getPIN(USER));
+        assertTrue(dbHandler.isStudent(USER));
+        try (UnitOfWork unit = dbHandler.begin()) {
+            CardContext context = unit.loadCardContext(CARD);
+            assertTrue(context.pinMatches("5555".toCharArray()));
+            assertEquals(79149, context.getBalance(AccountType.Chequing));
+        }
+        assertEquals(4, dbHandler.getProfileCacheHits());
+
+        dbHandler.invalidateUser(USER);
+        assertFalse(dbHandler.loadCardContext(CARD).pinMatches("5555".toCharArray()));
+        assertArrayEquals("0000".toCharArray(), dbHandler.getPIN(USER));
+        assertFalse(dbHandler.isStudent(USER));
+    }
+
+    @Test
+    @DisplayName("test 14: cached profiles expire after their TTL and the least recently used are evicted")
+    void profile_cache_expiry_and_eviction() throws Exception {
+        dbHandler.enableProfileCache(1, 0);
+        assertEquals(USER, dbHandler.getCardOwner(CARD));
+        assertEquals(USER, dbHandler.getCardOwner(CARD));
+        assertEquals(0, dbHandler.getProfileCacheHits());
+        assertEquals(2, dbHandler.getProfileCacheMisses());
+
+        DBHandler evicting = new DBHandler(url, 1);
+        try {
+            evicting.enableProfileCache(16, 60000);
+            try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement()) {
+                for (int i = 0; i < 64; i++) {
+                    stmt.execute("INSERT INTO cards VALUES ('card" + i + "', 'user" + i + "', '1234');");
+                }
+            }
+            for (int i = 0; i < 64; i++) {
+                assertEquals("user" + i, evicting.getCardOwner("card" + i));
+            }
+            assertTrue(evicting.getProfileCacheEvictions() > 0);
+            assertThrows(CardNotFoundException.class, () -> evicting.getCardOwner("missing"));
+        } finally {
+            evicting.close();
+        }
+    }
+
+    @Test
+    @DisplayName("test 15: optimistic units sharing the file lose the race instead of overwriting an update")
+    void optimistic_update_conflict() throws Exception {
+        dbHandler.enableOptimisticUpdates();
+        DBHandler otherProcess = new DBHandler(url, 1);
+        try {
+            otherProcess.enableOptimisticUpdates();
+            try (UnitOfWork slow = dbHandler.begin(); UnitOfWork fast = otherProcess.begin()) {
+                CardContext slowContext = slow.loadCardContext(CARD);
+                CardContext fastContext = fast.loadCardContext(CARD);
+                fastContext.updateBalance(AccountType.Chequing, 79149 - 1000);
+                fast.commit();
+
+                slowContext.updateBalance(AccountType.Chequing, 79149 - 500);
+                slowContext.updateBalance(AccountType.Savings, 96897 + 500);
+                assertThrows(BalanceConflictException.class, slow::commit);
+            }
+            assertEquals(78149, storedBalance(AccountType.Chequing));
+            assertEquals(96897, storedBalance(AccountType.Savings));
+
+            // Read again, the update goes through
+            try (UnitOfWork retry = dbHandler.begin()) {
+                CardContext context = retry.loadCardContext(CARD);
+                context.updateBalance(AccountType.Chequing, context.getBalance(AccountType.Chequing) - 500);
+                context.updateBalance(AccountType.Chequing, context.getBalance(AccountType.Chequing) - 500);
+                retry.commit();
+            }
+            assertEquals(77149, storedBalance(AccountType.Chequing));
+        } finally {
+            otherProcess.close();
+        }
+    }
+
+    @Test
+    @DisplayName("test 16: concurrent group commit units read, modify and write one account without losing an update")
+    void group_commit_units_lose_no_update() throws Exception {
+        dbHandler.enableGroupCommit(16, 2000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> units = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                units.add(executor.submit(() -> {
+                    try (UnitOfWork unit = dbHandler.begin()) {
+                        CardContext context = unit.loadCardContext(CARD, new AccountType[]{AccountType.Chequing});
+                        context.updateBalance(AccountType.Chequing, context.getBalance(AccountType.Chequing) + 10);
+                        unit.commit();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> unit : units) {
+                unit.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(79149 + 2000, storedBalance(AccountType.Chequing));
+    }
+
+    @Test
+    @DisplayName("test 17: a unit committed to a stopped group commit writer fails instead of waiting forever")
+    void stopped_group_commit_fails_fast() throws Exception {
+        ConnectionPool pool = new ConnectionPool(url, 1);
+        GroupCommitWriter writer = new GroupCommitWriter(pool, 16, 2000);
+        writer.start();
+        writer.stop();
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertThrows(UnsuccessfulBalanceUpdate.class, () -> writer.commit(
+                        Collections.singletonList(new BalanceWrite(USER, AccountType.Chequing, 0))));
+                assertTrue(writer.submit(Collections.singletonList(
+                        new BalanceWrite(USER, AccountType.Chequing, 0))).isCompletedExceptionally());
+            });
+        } finally {
+            pool.close();
+        }
+        assertEquals(79149, dbHandler.getBalance(USER, AccountType.Chequing));
+    }
+
+    private long storedBalance(AccountType type) throws Exception {
+        try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement();
+             java.sql.ResultSet rs = stmt.executeQuery("SELECT balance FROM accounts WHERE username = '" + USER
+                     + "' AND type = " + type.ordinal() + ";")) {
+            assertTrue(rs.next());
+            return rs.getLong(1);
+        }
+    }
+}
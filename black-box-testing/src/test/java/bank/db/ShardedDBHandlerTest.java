@@ -0,0 +1,121 @@
+package bank.db;
+
+import bank.BankFacade;
+import bank.exceptions.CardNotFoundException;
+import bank.journal.TransactionJournal;
+import bank.transactions.BankDeposit;
+import bank.transactions.BankTransfer;
+import bank.transactions.BankWithdrawal;
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+import bank.transactions.utils.TransactionType;
+import bank.utils.FeesCalculator;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedDBHandlerTest {
+    private static final int SHARDS = 3;
+    private static final int USERS = 12;
+
+    @TempDir
+    Path tempDir;
+
+    private ShardedDBHandler storage;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String sourceUrl = "jdbc:sqlite:" + tempDir.resolve("bank.db");
+        new DBHandler(sourceUrl, 1).close();
+        try (Connection conn = DriverManager.getConnection(sourceUrl); Statement stmt = conn.createStatement()) {
+            for (int i = 0; i < USERS; i++) {
+                stmt.execute("INSERT INTO clients VALUES ('user" + i + "', 'First', 'Last', 0);");
+                stmt.execute("INSERT INTO cards VALUES ('40000000000000" + (10 + i) + "', 'user" + i + "', '5555');");
+                stmt.execute("INSERT INTO accounts VALUES ('user" + i + "', 0, " + (i * 1000) + ");");
+            }
+        }
+
+        storage = new ShardedDBHandler("jdbc:sqlite:" + tempDir.resolve("bank-%d.db"), SHARDS, 2);
+        assertTrue(storage.isEmpty());
+        assertEquals(USERS * 3, storage.importFrom(sourceUrl));
+        assertFalse(storage.isEmpty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    @DisplayName("test 1: import puts every client, card and account on the shard of its username")
+    void import_splits_by_username() throws Exception {
+        int[] perShard = new int[SHARDS];
+        for (int shard = 0; shard < SHARDS; shard++) {
+            String url = "jdbc:sqlite:" + tempDir.resolve("bank-" + shard + ".db");
+            try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT username FROM cards;")) {
+                while (rs.next()) {
+                    assertEquals(shard, storage.shardOf(rs.getString(1)));
+                    perShard[shard]++;
+                }
+            }
+        }
+        assertEquals(USERS, perShard[0] + perShard[1] + perShard[2]);
+        for (int i = 0; i < USERS; i++) {
+            assertEquals(i * 1000, storage.getBalance("user" + i, AccountType.Chequing));
+        }
+    }
+
+    @Test
+    @DisplayName("test 2: cards route to their owner's shard and unknown cards are rejected")
+    void cards_route_to_owner_shard() throws Exception {
+        for (int i = 0; i < USERS; i++) {
+            DBHandler shard = storage.forCard("40000000000000" + (10 + i));
+            assertSame(storage.forUser("user" + i), shard);
+            assertSame(shard, storage.forCard("40000000000000" + (10 + i)));
+        }
+        assertThrows(CardNotFoundException.class, () -> storage.forCard("5100000000000000"));
+    }
+
+    @Test
+    @DisplayName("test 3: the facade performs transactions against the right shard")
+    void facade_routes_transactions() throws Exception {
+        FeesCalculator feesCalculator = new FeesCalculator();
+        BankFacade facade = new BankFacade(storage, new BankWithdrawal(feesCalculator),
+                new BankDeposit(feesCalculator), new BankTransfer(feesCalculator));
+
+        for (int i = 0; i < USERS; i++) {
+            String card = "40000000000000" + (10 + i);
+            String sessionToken = facade.checkCredentials(card, "5555".toCharArray());
+            assertNotNull(sessionToken);
+            TransactionResult result = facade.performTransaction(new TransactionData(card, sessionToken,
+                    TransactionType.Deposit, new AccountType[]{AccountType.Chequing}, 5000));
+            assertTrue(result.isSuccessful());
+            assertEquals(result.getAccountBalances()[0], storage.getBalance("user" + i, AccountType.Chequing));
+        }
+        assertNull(facade.checkCredentials("5100000000000000", "5555".toCharArray()));
+    }
+
+    @Test
+    @DisplayName("test 4: a journal replays every record onto the shard of its user")
+    void journal_replays_onto_shards() throws Exception {
+        try (TransactionJournal journal = new TransactionJournal(tempDir.resolve("journal"), 1024, false)) {
+            for (int i = 0; i < USERS; i++) {
+                journal.append(new TransactionData("40000000000000" + (10 + i), "5555".toCharArray(),
+                        TransactionType.Deposit, new AccountType[]{AccountType.Chequing}, 700), "user" + i,
+                        new TransactionResult(true, "", 0, new long[]{i * 1000 + 700}));
+            }
+            journal.replay(storage);
+        }
+        for (int i = 0; i < USERS; i++)
+            assertEquals(i * 1000 + 700, storage.forUser("user" + i).getBalance("user" + i, AccountType.Chequing));
+    }
+}
@@ -0,0 +1,130 @@
+package bank.journal;
+
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+import bank.transactions.utils.TransactionType;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionJournalTest {
+    private static final String CARD = "4000000000000000";
+    private static final String USER = "ktsiounis";
+    private static final int SMALL_SEGMENT = 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private static TransactionData withdrawal(long amount) {
+        return new TransactionData(CARD, "5555".toCharArray(), TransactionType.Withdrawal,
+                new AccountType[]{AccountType.Chequing, null}, amount);
+    }
+
+    private static TransactionResult result(long fees, long... balances) {
+        return new TransactionResult(true, "", fees, balances);
+    }
+
+    private List<JournalRecord> readAll(TransactionJournal journal) throws Exception {
+        List<JournalRecord> records = new ArrayList<>();
+        journal.replay(records::add);
+        return records;
+    }
+
+    @Test
+    @DisplayName("test 1: appended records replay in order with all of their fields")
+    void append_and_replay() throws Exception {
+        try (TransactionJournal journal = new TransactionJournal(tempDir, SMALL_SEGMENT, false)) {
+            journal.append(withdrawal(100), USER, result(20, 69129));
+            journal.append(new TransactionData(CARD, "5555".toCharArray(), TransactionType.Transfer,
+                    new AccountType[]{AccountType.TFSA, AccountType.Chequing}, 100), USER, result(250, 232150, 79129));
+
+            List<JournalRecord> records = readAll(journal);
+            assertEquals(2, records.size());
+            JournalRecord transfer = records.get(1);
+            assertEquals(1, transfer.getSequence());
+            assertEquals(TransactionType.Transfer, transfer.getType());
+            assertEquals(USER, transfer.getUsername());
+            assertArrayEquals(new AccountType[]{AccountType.TFSA, AccountType.Chequing}, transfer.getAccounts());
+            assertArrayEquals(new long[]{232150, 79129}, transfer.getBalances());
+            assertEquals(250, transfer.getFees());
+            assertEquals(1, records.get(0).getAccounts().length);
+        }
+    }
+
+    @Test
+    @DisplayName("test 2: segments roll over and a reopened journal continues the sequence")
+    void rollover_and_reopen() throws Exception {
+        try (TransactionJournal journal = new TransactionJournal(tempDir, SMALL_SEGMENT, false)) {
+            for (int i = 0; i < 40; i++) {
+                journal.append(withdrawal(i), USER, result(0, 1000 - i));
+            }
+        }
+        try (TransactionJournal journal = new TransactionJournal(tempDir, SMALL_SEGMENT, false)) {
+            assertEquals(40, journal.getNextSequence());
+            journal.append(withdrawal(40), USER, result(0, 960));
+            List<JournalRecord> records = readAll(journal);
+            assertEquals(41, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(i, records.get(i).getSequence());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("test 3: compaction keeps the newest record per account and replays to the same balances")
+    void compaction_keeps_latest_per_account() throws Exception {
+        try (TransactionJournal journal = new TransactionJournal(tempDir, SMALL_SEGMENT, false)) {
+            for (int i = 0; i < 40; i++) {
+                journal.append(withdrawal(i), USER, result(0, 1000 - i));
+            }
+            int dropped = journal.compact();
+            assertTrue(dropped > 0);
+
+            List<JournalRecord> records = readAll(journal);
+            JournalRecord last = records.get(records.size() - 1);
+            assertEquals(39, last.getSequence());
+            assertEquals(961, last.getBalances()[0]);
+            assertEquals(40 - dropped, records.size());
+        }
+    }
+
+    @Test
+    @DisplayName("test 4: a journal holding only version 0 segments is left intact and continues in a new segment")
+    void upgrade_from_version_0() throws Exception {
+        // Version 0 framed records the same way, with doubles where version 1 has long cents
+        ByteBuffer segment = ByteBuffer.allocate(SMALL_SEGMENT);
+        segment.putInt(0x424a4e4c);
+        segment.putInt(0);
+        for (int i = 0; i < 3; i++) {
+            segment.put(new JournalRecord(i, 0, TransactionType.Withdrawal, CARD, USER,
+                    new AccountType[]{AccountType.Chequing}, new long[]{Double.doubleToLongBits(10.0 - i)},
+                    Double.doubleToLongBits(1.0), 0).encode());
+        }
+        byte[] legacy = segment.array();
+        Path legacyPath = tempDir.resolve("00000000000000000000.journal");
+        Files.write(legacyPath, legacy);
+
+        try (TransactionJournal journal = new TransactionJournal(tempDir, SMALL_SEGMENT, false)) {
+            assertEquals(3, journal.getNextSequence());
+            journal.append(withdrawal(100), USER, result(0, 900));
+            List<JournalRecord> records = readAll(journal);
+            assertEquals(1, records.size());
+            assertEquals(3, records.get(0).getSequence());
+            assertEquals(900, records.get(0).getBalances()[0]);
+        }
+        assertArrayEquals(legacy, Files.readAllBytes(legacyPath));
+
+        try (TransactionJournal journal = new TransactionJournal(tempDir, SMALL_SEGMENT, false)) {
+            assertEquals(4, journal.getNextSequence());
+        }
+        assertArrayEquals(legacy, Files.readAllBytes(legacyPath));
+    }
+}
@@ -0,0 +1,80 @@
+package bank.json;
+
+import bank.transactions.utils.AccountType;
+import bank.transactions.utils.TransactionData;
+import bank.transactions.utils.TransactionResult;
+import bank.transactions.utils.TransactionType;
+import com.google.gson.JsonSyntaxException;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonCodecTest {
+    private final JsonCodec codec = new JsonCodec();
+
+    private static InputStream json(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("test 1: transaction data and results survive a round trip")
+    void round_trip() throws Exception {
+        TransactionData data = new TransactionData("4000000000000000", "token", TransactionType.Transfer,
+                new AccountType[]{AccountType.Chequing, null}, 12345);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.writeTransactionBatch(out, Arrays.asList(data, data));
+        List<TransactionData> batch = codec.readTransactionBatch(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(2, batch.size());
+        TransactionData read = batch.get(1);
+        assertEquals("4000000000000000", read.getCardNumber());
+        assertEquals("token", read.getSessionToken());
+        assertEquals(TransactionType.Transfer, read.getType());
+        assertArrayEquals(new AccountType[]{AccountType.Chequing, null}, read.getAccounts());
+        assertEquals(12345, read.getAmount());
+
+        out.reset();
+        codec.writeTransactionResult(out, new TransactionResult(true, null, 20, new long[]{9980, 500, 7}));
+        TransactionResult result = codec.readTransactionResult(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(result.isSuccessful());
+        assertNull(result.getReason());
+        assertEquals(20, result.getFees());
+        assertArrayEquals(new long[]{9980, 500, 7}, result.getAccountBalances());
+    }
+
+    @Test
+    @DisplayName("test 2: multi-line bodies parse and unknown fields are skipped")
+    void multi_line_body() throws Exception {
+        TransactionData data = codec.readTransactionData(json("{\n  \"cardNumber\": \"4000000000000000\",\n"
+                + "  \"pin\": \"5555\",\n  \"extra\": {\"a\": [1, 2]},\n  \"type\": \"Deposit\",\n"
+                + "  \"accounts\": [\"Savings\"],\n  \"amount\": 100\n}\n"));
+        assertArrayEquals("5555".toCharArray(), data.getPin());
+        assertNull(data.getSessionToken());
+        assertEquals(AccountType.Savings, data.getAccounts()[0]);
+
+        Credentials credentials = codec.readCredentials(json("{\"cardNumber\":\"4000000000000000\",\n\"pin\":\"5555\"}"));
+        assertEquals("4000000000000000", credentials.getCardNumber());
+        assertArrayEquals("5555".toCharArray(), credentials.getPin());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.writeSessionToken(out, null);
+        assertEquals("null", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertNull(codec.readSessionToken(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    @DisplayName("test 3: malformed bodies and unknown enum names are syntax errors")
+    void malformed_body() {
+        assertThrows(JsonSyntaxException.class, () -> codec.readTransactionData(json("{\"amount\": \"lots\"}")));
+        assertThrows(JsonSyntaxException.class, () -> codec.readTransactionData(json("{\"type\": \"Loan\"}")));
+        assertThrows(JsonSyntaxException.class, () -> codec.readTransactionBatch(json("{\"cardNumber\": ")));
+        assertThrows(JsonSyntaxException.class, () -> codec.readCredentials(json("")));
+    }
+}
@@ -0,0 +1,50 @@
+package bank.metrics;
+
+import org.junit.jupiter.api.*;
+
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    @Test
+    @DisplayName("test 1: percentiles stay within one bucket of the recorded latencies")
+    void percentiles_are_within_a_bucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500500000L, snapshot.getSumNanos());
+        for (double quantile : new double[] { 0.5, 0.99, 0.999 }) {
+            double expected = quantile * 1000000;
+            long actual = snapshot.percentileNanos(quantile);
+            assertTrue(actual >= expected && actual <= expected * 1.125, quantile + ": " + actual);
+        }
+        assertEquals(0, new LatencyHistogram().snapshot().percentileNanos(0.99));
+    }
+
+    @Test
+    @DisplayName("test 2: counters and summaries are written in the Prometheus text format")
+    void writes_prometheus_text() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_requests_total", "Requests.", "endpoint", "a").add(3);
+        registry.histogram("test_seconds", "Latency.", "endpoint", "a").record(2000000);
+        assertSame(registry.counter("test_requests_total", "Requests.", "endpoint", "a"),
+                registry.counter("test_requests_total", "Requests.", "endpoint", "a"));
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.histogram("test_requests_total", "Requests.", "endpoint", "b"));
+
+        StringWriter out = new StringWriter();
+        registry.writePrometheus(out);
+        String text = out.toString();
+        assertTrue(text.contains("# TYPE test_requests_total counter\n"));
+        assertTrue(text.contains("test_requests_total{endpoint=\"a\"} 3\n"));
+        assertTrue(text.contains("# TYPE test_seconds summary\n"));
+        assertTrue(text.contains("test_seconds{endpoint=\"a\",quantile=\"0.99\"} 0.002"));
+        assertTrue(text.contains("test_seconds_count{endpoint=\"a\"} 1\n"));
+    }
+}
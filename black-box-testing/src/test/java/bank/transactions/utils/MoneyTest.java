@@ -0,0 +1,51 @@
+package bank.transactions.utils;
+
+import bank.utils.FeesCalculator;
+import org.junit.jupiter.api.*;
+
+import java.util.Calendar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    @DisplayName("test 1: doubles convert to the nearest cent, ties to even")
+    void from_double_rounds_half_even() {
+        assertEquals(79148, Money.fromDouble(791.485));
+        assertEquals(79150, Money.fromDouble(791.495));
+        assertEquals(10, Money.fromDouble(0.1));
+        assertEquals(-1234, Money.fromDouble(-12.345));
+    }
+
+    @Test
+    @DisplayName("test 2: rates in basis points round half to even")
+    void apply_rate_rounds_half_even() {
+        assertEquals(2, Money.applyRate(250, 100));
+        assertEquals(4, Money.applyRate(350, 100));
+        assertEquals(3, Money.applyRate(251, 100));
+        assertEquals(-2, Money.applyRate(-250, 100));
+        assertEquals(0, Money.applyRate(123456, 0));
+    }
+
+    @Test
+    @DisplayName("test 3: cents format with two decimals")
+    void format_cents() {
+        assertEquals("791.49", Money.format(79149));
+        assertEquals("0.05", Money.format(5));
+        assertEquals("-1.50", Money.format(-150));
+        assertEquals("100.00", Money.format(Money.ofWhole(100)));
+    }
+
+    @Test
+    @DisplayName("test 4: cents fees follow the same rules as the double fees")
+    void cents_fees_match_double_fees() {
+        FeesCalculator calculator = new FeesCalculator();
+        assertEquals(20, calculator.calculateWithdrawalFeeCents(10000, 50000, false, Calendar.MONDAY));
+        assertEquals(0, calculator.calculateWithdrawalFeeCents(10000, 50000, true, Calendar.SUNDAY));
+        assertEquals(100, calculator.calculateDepositInterestCents(10001, 100001, true));
+        assertEquals(5500, calculator.calculateTransferFeeCents(100000, 200000, 200000, false));
+        assertEquals(calculator.calculateTransferFee(1000, 2000, 2000, false),
+                Money.toDouble(calculator.calculateTransferFeeCents(100000, 200000, 200000, false)), 1e-9);
+    }
+}
@@ -0,0 +1,43 @@
+package bank.utils;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionTokensTest {
+    private static final String CARD = "4000000000000000";
+    private static final byte[] KEY = "0123456789abcdef0123456789abcdef".getBytes();
+
+    @Test
+    @DisplayName("test 1: an issued token is valid for its own card only")
+    void token_is_bound_to_card() {
+        SessionTokens tokens = new SessionTokens(KEY, 60000);
+        String token = tokens.issue(CARD);
+        assertTrue(tokens.isValid(token, CARD));
+        assertFalse(tokens.isValid(token, "5100000000000000"));
+        assertFalse(tokens.isValid(null, CARD));
+    }
+
+    @Test
+    @DisplayName("test 2: tampered tokens and tokens signed with another key are rejected")
+    void tampered_tokens_are_rejected() {
+        SessionTokens tokens = new SessionTokens(KEY, 60000);
+        String token = tokens.issue(CARD);
+        String[] parts = token.split("\\.");
+
+        String otherCard = "5100000000000000." + parts[1] + "." + parts[2];
+        assertFalse(tokens.isValid(otherCard, "5100000000000000"));
+        String longerExpiry = CARD + ".7fffffffffff." + parts[2];
+        assertFalse(tokens.isValid(longerExpiry, CARD));
+        assertFalse(tokens.isValid("not a token", CARD));
+        assertFalse(tokens.isValid(CARD + ".zz.!!", CARD));
+        assertFalse(new SessionTokens().isValid(token, CARD));
+    }
+
+    @Test
+    @DisplayName("test 3: tokens stop being valid once they expire")
+    void tokens_expire() {
+        SessionTokens tokens = new SessionTokens(KEY, -1);
+        assertFalse(tokens.isValid(tokens.issue(CARD), CARD));
+    }
+}